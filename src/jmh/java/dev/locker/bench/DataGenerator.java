@@ -0,0 +1,190 @@
+package dev.locker.bench;
+
+import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
+import dev.locker.domain.User;
+import dev.locker.repo.file.SnapshotWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic synthetic datasets for benchmarks and load tests.
+ * <p>
+ * Loans are spread chronologically over the {@link #HISTORY} before a fixed end instant. Every
+ * loan is returned except the latest loan of roughly a third of the devices, so each device has
+ * at most one open loan, exactly like the service guarantees. Device {@code timesBorrowed}
+ * counters match the generated loans.
+ */
+public final class DataGenerator {
+    /** Time span covered by the generated loan history. */
+    public static final Duration HISTORY = Duration.ofDays(180);
+
+    private static final String[] BRANDS = {"Dell", "Lenovo", "HP", "Apple", "Logitech", "Sony", "Canon", "Samsung", "Asus", "Jabra"};
+    private static final String[] KINDS = {"Latitude", "ThinkPad", "EliteBook", "MacBook Air", "iPad Pro", "C920 Cam", "Alpha A7",
+            "EOS R6", "Galaxy Tab", "Zenbook", "Evolve Headset", "USB-C Hub", "Monitor", "Projector", "Keyboard"};
+    private static final String[] TAGS = {"laptop", "mac", "windows", "design", "dev", "camera", "meeting", "audio", "video",
+            "tablet", "usb", "display", "portable", "4k"};
+
+    private final Random random;
+    private final Instant end;
+    private final List<Device> devices;
+    private final List<User> users;
+    private final List<Loan> loans;
+
+    /**
+     * Generate a dataset.
+     *
+     * @param loanCount   number of loans
+     * @param deviceCount number of devices
+     * @param userCount   number of users
+     * @param seed        random seed; equal arguments give equal datasets
+     * @param end         the instant the loan history ends at, typically now
+     */
+    public DataGenerator(int loanCount, int deviceCount, int userCount, long seed, Instant end) {
+        this.random = new Random(seed);
+        this.end = end;
+        this.users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(new User(userId(i), "User " + i));
+        }
+        int[] borrowCounts = new int[deviceCount];
+        this.loans = generateLoans(loanCount, deviceCount, userCount, borrowCounts);
+        this.devices = new ArrayList<>(deviceCount);
+        for (int i = 0; i < deviceCount; i++) {
+            devices.add(device(i, borrowCounts[i]));
+        }
+    }
+
+    /**
+     * Generate a dataset with device and user counts derived from the number of loans.
+     *
+     * @param loanCount number of loans
+     * @param seed      random seed
+     * @return the dataset
+     */
+    public static DataGenerator ofLoans(int loanCount, long seed) {
+        return new DataGenerator(loanCount, defaultDevices(loanCount), Math.max(20, loanCount / 100), seed, Instant.now());
+    }
+
+    /**
+     * Return the default number of devices for a number of loans: one device per 50 loans, but
+     * at least 50.
+     *
+     * @param loanCount number of loans
+     * @return the number of devices
+     */
+    public static int defaultDevices(int loanCount) {
+        return Math.max(50, loanCount / 50);
+    }
+
+    /**
+     * Return the id of the i-th generated device.
+     *
+     * @param i the device index
+     * @return the device id
+     */
+    public static String deviceId(int i) {
+        return "d-" + i;
+    }
+
+    /**
+     * Return the id of the i-th generated user.
+     *
+     * @param i the user index
+     * @return the user id
+     */
+    public static String userId(int i) {
+        return "u-" + i;
+    }
+
+    public List<Device> devices() {
+        return devices;
+    }
+
+    public List<User> users() {
+        return users;
+    }
+
+    public List<Loan> loans() {
+        return loans;
+    }
+
+    /**
+     * Write the dataset as {@code devices.json}, {@code users.json} and {@code loans.json} into
+     * the given directory, in the format the file-backed repositories load.
+     *
+     * @param dir the target directory
+     * @throws IOException if a file cannot be written
+     */
+    public void writeTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        SnapshotWriter.write(dir.resolve("devices.json"), devices);
+        SnapshotWriter.write(dir.resolve("users.json"), users);
+        SnapshotWriter.write(dir.resolve("loans.json"), loans);
+    }
+
+    private List<Loan> generateLoans(int loanCount, int deviceCount, int userCount, int[] borrowCounts) {
+        List<Loan> result = new ArrayList<>(loanCount);
+        int[] lastLoan = new int[deviceCount];
+        Arrays.fill(lastLoan, -1);
+        long spanNanos = HISTORY.toNanos();
+        Instant start = end.minus(HISTORY);
+        for (int i = 0; i < loanCount; i++) {
+            int device = random.nextInt(deviceCount);
+            Instant borrowedAt = start.plusNanos(spanNanos / Math.max(1, loanCount) * i);
+            Instant dueAt = borrowedAt.plus(Duration.ofDays(1 + random.nextInt(14)));
+            Instant returnedAt = borrowedAt.plus(Duration.ofHours(1 + random.nextInt(20 * 24)));
+            result.add(new Loan(deviceId(device), userId(random.nextInt(userCount)), borrowedAt, dueAt, returnedAt));
+            lastLoan[device] = i;
+            borrowCounts[device]++;
+        }
+        for (int device = 0; device < deviceCount; device++) {
+            int last = lastLoan[device];
+            if (last >= 0 && random.nextInt(3) == 0) {
+                result.set(last, result.get(last).withReturnedAt(null));
+            }
+        }
+        return result;
+    }
+
+    private Device device(int i, int timesBorrowed) {
+        String name = BRANDS[random.nextInt(BRANDS.length)] + " " + KINDS[random.nextInt(KINDS.length)] + " " + (100 + random.nextInt(9900));
+        Set<String> tags = Set.of(TAGS[random.nextInt(TAGS.length)]);
+        if (random.nextBoolean()) {
+            String second = TAGS[random.nextInt(TAGS.length)];
+            if (!tags.contains(second)) tags = Set.of(tags.iterator().next(), second);
+        }
+        Device.Condition condition = Device.Condition.values()[random.nextInt(Device.Condition.values().length)];
+        return new Device(deviceId(i), name, tags, condition, timesBorrowed);
+    }
+
+    /**
+     * Write a generated dataset to a directory.
+     * <p>
+     * Usage: {@code DataGenerator <dir> <loans> [devices] [users]}
+     *
+     * @param args command line arguments
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DataGenerator <dir> <loans> [devices] [users]");
+            System.exit(2);
+        }
+        int loanCount = Integer.parseInt(args[1]);
+        int deviceCount = args.length > 2 ? Integer.parseInt(args[2]) : defaultDevices(loanCount);
+        int userCount = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(20, loanCount / 100);
+        DataGenerator data = new DataGenerator(loanCount, deviceCount, userCount, 42, Instant.now());
+        data.writeTo(Path.of(args[0]));
+        System.out.printf("Wrote %d devices, %d users and %d loans to %s%n", deviceCount, userCount, loanCount, args[0]);
+    }
+}
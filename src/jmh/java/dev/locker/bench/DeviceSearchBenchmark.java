@@ -0,0 +1,61 @@
+package dev.locker.bench;
+
+import dev.locker.domain.Device;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.service.DeviceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DeviceService#search} over catalogs of different sizes, for a broad, a multi-term and a
+ * selective query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DeviceSearchBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int devices;
+
+    @Param({"lap", "dell latitude", "zenbook 4242"})
+    public String query;
+
+    private DeviceService service;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataGenerator data = new DataGenerator(0, devices, 20, 42, Instant.now());
+        FileBackedDeviceRepository repo = new FileBackedDeviceRepository(Path.of("does-not-exist", "devices.json"));
+        repo.saveAll(data.devices());
+        service = new DeviceService(repo);
+    }
+
+    @Benchmark
+    public List<Device> search() {
+        return service.search(query);
+    }
+
+    @Benchmark
+    public List<Device> searchFirstPage() {
+        return service.search(query, Set.of(), 0, 20);
+    }
+}
@@ -0,0 +1,111 @@
+package dev.locker.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
+import dev.locker.http.DeviceJsonCache;
+import dev.locker.util.DomainJsonModule;
+import dev.locker.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JsonUtil} mapper cost for single entities and for response-sized lists, and device lists
+ * assembled from {@link DeviceJsonCache} fragments. {@code mapper=reflective} runs the same
+ * benchmarks on a mapper without the {@link DomainJsonModule}, i.e. Jackson's bean handling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private static final TypeReference<List<Loan>> LOAN_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1", "100", "1000"})
+    public int size;
+
+    @Param({"tuned", "reflective"})
+    public String mapper;
+
+    private ObjectMapper json;
+    private Device device;
+    private Loan loan;
+    private List<Device> devices;
+    private List<Loan> loans;
+    private byte[] deviceJson;
+    private byte[] loanJson;
+    private byte[] loanListJson;
+    private final DeviceJsonCache deviceFragments = new DeviceJsonCache();
+
+    @Setup(Level.Trial)
+    public void setup() throws JsonProcessingException {
+        json = mapper.equals("tuned") ? JsonUtil.mapper() : new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        DataGenerator data = new DataGenerator(size, size, 20, 42, Instant.now());
+        devices = data.devices();
+        loans = data.loans();
+        device = devices.get(0);
+        loan = loans.get(0);
+        deviceJson = json.writeValueAsBytes(device);
+        loanJson = json.writeValueAsBytes(loan);
+        loanListJson = json.writeValueAsBytes(loans);
+    }
+
+    @Benchmark
+    public byte[] writeDevice() throws JsonProcessingException {
+        return json.writeValueAsBytes(device);
+    }
+
+    @Benchmark
+    public byte[] writeLoan() throws JsonProcessingException {
+        return json.writeValueAsBytes(loan);
+    }
+
+    @Benchmark
+    public Device readDevice() throws IOException {
+        return json.readValue(deviceJson, Device.class);
+    }
+
+    @Benchmark
+    public Loan readLoan() throws IOException {
+        return json.readValue(loanJson, Loan.class);
+    }
+
+    @Benchmark
+    public byte[] writeDeviceList() throws JsonProcessingException {
+        return json.writeValueAsBytes(devices);
+    }
+
+    @Benchmark
+    public byte[] writeDeviceListFromFragments() throws IOException {
+        return deviceFragments.toArray(devices);
+    }
+
+    @Benchmark
+    public List<Loan> readLoanList() throws IOException {
+        return json.readValue(loanListJson, LOAN_LIST);
+    }
+}
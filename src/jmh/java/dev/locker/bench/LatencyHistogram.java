@@ -0,0 +1,93 @@
+package dev.locker.bench;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values are bucketed by their
+ * power of two and, within it, into {@link #SUB_BUCKETS} linear steps, so every recorded value
+ * keeps a relative precision of better than 1% at a fixed memory cost. Not thread-safe: each
+ * load-generating worker records into its own histogram and the results are merged at the end.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS - 1;
+
+    private final long[] counts = new long[LINEAR + MAGNITUDES * SUB_BUCKETS];
+    private long total;
+    private long max;
+    private double sum;
+
+    /**
+     * Record one value.
+     *
+     * @param value the value, e.g. a latency in nanoseconds; negative values count as 0
+     */
+    void record(long value) {
+        long v = Math.max(0, value);
+        counts[indexOf(v)]++;
+        total++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Add all values recorded by another histogram.
+     *
+     * @param other the histogram to merge
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return total;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Return the value at the given percentile, as the upper bound of its bucket.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at that percentile, or 0 if nothing was recorded
+     */
+    long percentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, highestValueIn(i));
+        }
+        return max;
+    }
+
+    /**
+     * Values below {@link #LINEAR} map to themselves; larger values keep their top
+     * {@code SUB_BUCKET_BITS + 1} bits, i.e. a leading one and {@link #SUB_BUCKETS} steps.
+     */
+    private static int indexOf(long value) {
+        if (value < LINEAR) return (int) value;
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+        int sub = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return LINEAR + (magnitude - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < LINEAR) return index;
+        int magnitude = (index - LINEAR) / SUB_BUCKETS + 1;
+        long top = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << magnitude) - 1;
+    }
+}
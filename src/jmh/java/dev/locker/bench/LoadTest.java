@@ -0,0 +1,271 @@
+package dev.locker.bench;
+
+import dev.locker.app.AppConfig;
+import dev.locker.app.Main;
+import dev.locker.util.JsonUtil;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * End-to-end load generator. Generates a dataset, starts {@link Main} in-process on an ephemeral
+ * port and drives a weighted mix of routes from virtual threads using the JDK
+ * {@link HttpClient}, in a closed loop (each worker sends its next request when the previous one
+ * has been answered). After a warm-up phase, latencies are recorded per route; throughput and
+ * p50/p99/p99.9 are printed and written as JSON.
+ * <p>
+ * Options ({@code --name=value}): {@code loans} (100000), {@code devices} and {@code users}
+ * (derived from loans), {@code workers} (64), {@code warmup} (PT10S), {@code duration} (PT30S),
+ * {@code mix} ({@code devices=10,search=35,borrow=20,return=20,popular=15}), {@code out}
+ * ({@code load-test.json}), {@code http-executor} (passed to the server).
+ */
+public final class LoadTest {
+    private static final List<String> ROUTES = List.of("devices", "search", "borrow", "return", "popular");
+    private static final String[] QUERIES = {"lap", "dell", "cam", "usb", "thinkpad", "pro", "4k", "headset", "zenbook 4", "hub"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final String base;
+    private final int devices;
+    private final int users;
+    private final String[] routes;
+    private final int[] cumulativeWeights;
+
+    private LoadTest(int port, int devices, int users, Map<String, Integer> mix) {
+        this.base = "http://localhost:" + port;
+        this.devices = devices;
+        this.users = users;
+        this.routes = mix.keySet().toArray(String[]::new);
+        this.cumulativeWeights = new int[routes.length];
+        int sum = 0;
+        for (int i = 0; i < routes.length; i++) {
+            sum += mix.get(routes[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        Map<String, String> opts = options(args);
+        int loans = Integer.parseInt(opts.getOrDefault("loans", "100000"));
+        int deviceCount = Integer.parseInt(opts.getOrDefault("devices", String.valueOf(DataGenerator.defaultDevices(loans))));
+        int userCount = Integer.parseInt(opts.getOrDefault("users", String.valueOf(Math.max(20, loans / 100))));
+        int workers = Integer.parseInt(opts.getOrDefault("workers", "64"));
+        Duration warmup = Duration.parse(opts.getOrDefault("warmup", "PT10S"));
+        Duration duration = Duration.parse(opts.getOrDefault("duration", "PT30S"));
+        Map<String, Integer> mix = parseMix(opts.getOrDefault("mix", "devices=10,search=35,borrow=20,return=20,popular=15"));
+        Path out = Path.of(opts.getOrDefault("out", "load-test.json"));
+
+        Path dir = Files.createTempDirectory("load-test");
+        new DataGenerator(loans, deviceCount, userCount, 42, Instant.now()).writeTo(dir);
+        Main app = Main.start(AppConfig.fromArgs(new String[]{
+                "--data-dir=" + dir, "--port=0",
+                "--http-executor=" + opts.getOrDefault("http-executor", "virtual")}));
+        try {
+            LoadTest test = new LoadTest(app.port(), deviceCount, userCount, mix);
+            Map<String, RouteResult> results = test.run(workers, warmup, duration);
+            Map<String, Object> report = report(opts, loans, deviceCount, userCount, workers, warmup, duration, mix, results);
+            Files.write(out, JsonUtil.mapper().writerWithDefaultPrettyPrinter().writeValueAsBytes(report));
+            print(results, duration);
+            System.out.println("Results written to " + out.toAbsolutePath());
+        } finally {
+            app.stop();
+            deleteRecursively(dir);
+        }
+    }
+
+    private Map<String, RouteResult> run(int workers, Duration warmup, Duration duration) throws Exception {
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long measureUntil = measureFrom + duration.toNanos();
+        List<Future<Map<String, RouteResult>>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < workers; w++) {
+                futures.add(pool.submit(() -> work(measureFrom, measureUntil)));
+            }
+        }
+        Map<String, RouteResult> merged = new TreeMap<>();
+        for (Future<Map<String, RouteResult>> f : futures) {
+            f.get().forEach((route, r) -> merged.computeIfAbsent(route, k -> new RouteResult()).add(r));
+        }
+        return merged;
+    }
+
+    private Map<String, RouteResult> work(long measureFrom, long measureUntil) {
+        Map<String, RouteResult> results = new HashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            String route = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            HttpRequest request = request(route, random);
+            long start = System.nanoTime();
+            if (start >= measureUntil) break;
+            int status;
+            try {
+                status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long end = System.nanoTime();
+            if (start >= measureFrom && end <= measureUntil) {
+                results.computeIfAbsent(route, k -> new RouteResult()).record(status, end - start);
+            }
+        }
+        return results;
+    }
+
+    private String pick(int point) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (point < cumulativeWeights[i]) return routes[i];
+        }
+        return routes[routes.length - 1];
+    }
+
+    private HttpRequest request(String route, ThreadLocalRandom random) {
+        String device = DataGenerator.deviceId(random.nextInt(devices));
+        return switch (route) {
+            case "devices" -> get("/devices?limit=100&after=" + device);
+            case "search" -> get("/devices/search?limit=50&q=" + QUERIES[random.nextInt(QUERIES.length)].replace(' ', '+'));
+            case "borrow" -> post("/loans/borrow", "{\"deviceId\":\"" + device + "\",\"userId\":\""
+                    + DataGenerator.userId(random.nextInt(users)) + "\",\"days\":" + (1 + random.nextInt(14)) + "}");
+            case "return" -> post("/loans/return", "{\"deviceId\":\"" + device + "\"}");
+            case "popular" -> get("/stats/popular?limit=5");
+            default -> throw new IllegalArgumentException("Unknown route " + route);
+        };
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static Map<String, Object> report(Map<String, String> opts, int loans, int devices, int users, int workers,
+                                              Duration warmup, Duration duration, Map<String, Integer> mix,
+                                              Map<String, RouteResult> results) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("loans", loans);
+        config.put("devices", devices);
+        config.put("users", users);
+        config.put("workers", workers);
+        config.put("warmup", warmup.toString());
+        config.put("duration", duration.toString());
+        config.put("mix", mix);
+        config.put("httpExecutor", opts.getOrDefault("http-executor", "virtual"));
+        config.put("cpus", Runtime.getRuntime().availableProcessors());
+        config.put("java", System.getProperty("java.version"));
+
+        double seconds = duration.toNanos() / 1e9;
+        Map<String, Object> routes = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<String, RouteResult> e : results.entrySet()) {
+            RouteResult r = e.getValue();
+            total += r.latency.count();
+            Map<String, Object> route = new LinkedHashMap<>();
+            route.put("requests", r.latency.count());
+            route.put("throughput", r.latency.count() / seconds);
+            route.put("statuses", r.statuses);
+            route.put("meanMs", r.latency.mean() / 1e6);
+            route.put("p50Ms", r.latency.percentile(50) / 1e6);
+            route.put("p99Ms", r.latency.percentile(99) / 1e6);
+            route.put("p999Ms", r.latency.percentile(99.9) / 1e6);
+            route.put("maxMs", r.latency.max() / 1e6);
+            routes.put(e.getKey(), route);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.now().toString());
+        report.put("config", config);
+        report.put("requests", total);
+        report.put("throughput", total / seconds);
+        report.put("routes", routes);
+        return report;
+    }
+
+    private static void print(Map<String, RouteResult> results, Duration duration) {
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf("%-8s %10s %10s %9s %9s %9s %9s  %s%n", "route", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        for (Map.Entry<String, RouteResult> e : results.entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            System.out.printf("%-8s %10d %10.1f %9.2f %9.2f %9.2f %9.2f  %s%n", e.getKey(), h.count(), h.count() / seconds,
+                    h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6,
+                    e.getValue().statuses);
+        }
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            int eq = arg.indexOf('=');
+            opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=");
+            if (kv.length != 2 || !ROUTES.contains(kv[0].trim())) {
+                throw new IllegalArgumentException("Invalid mix entry '" + part + "'; routes are " + ROUTES);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) mix.put(kv[0].trim(), weight);
+        }
+        if (mix.isEmpty()) throw new IllegalArgumentException("Mix has no positive weights");
+        return mix;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Latencies and status counts of one route, recorded by one worker or merged.
+     */
+    private static final class RouteResult {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<String, Long> statuses = new TreeMap<>();
+
+        void record(int status, long nanos) {
+            latency.record(nanos);
+            statuses.merge(status < 0 ? "io-error" : String.valueOf(status), 1L, Long::sum);
+        }
+
+        void add(RouteResult other) {
+            latency.add(other.latency);
+            other.statuses.forEach((k, v) -> statuses.merge(k, v, Long::sum));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dev.locker.bench;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.file.FileBackedLoanRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of {@link FileBackedLoanRepository} without a journal, i.e. the in-memory cost of
+ * lookups and writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoanRepositoryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int loans;
+
+    private Path dir;
+    private FileBackedLoanRepository repo;
+    private String[] deviceIds;
+    private List<Loan> open;
+    private Instant nextBorrow;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        DataGenerator data = DataGenerator.ofLoans(loans, 42);
+        dir = Files.createTempDirectory("loan-bench");
+        repo = new FileBackedLoanRepository(dir.resolve("loans.json"));
+        repo.saveAll(data.loans());
+        deviceIds = data.devices().stream().map(d -> d.id()).toArray(String[]::new);
+        open = data.loans().stream().filter(l -> l.returnedAt() == null).toList();
+        nextBorrow = Instant.now().plusSeconds(3600);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dir.resolve("loans.json"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Optional<Loan> findOpenLoanByDevice() {
+        return repo.findOpenLoanByDevice(deviceIds[next(deviceIds.length)]);
+    }
+
+    @Benchmark
+    public void save() {
+        nextBorrow = nextBorrow.plusNanos(1);
+        repo.save(new Loan(deviceIds[next(deviceIds.length)], "u-0", nextBorrow, nextBorrow.plusSeconds(86_400), nextBorrow));
+    }
+
+    @Benchmark
+    public void update() {
+        repo.update(open.get(next(open.size())));
+    }
+
+    private int next(int bound) {
+        cursor = (cursor + 7919) % bound;
+        return cursor;
+    }
+}
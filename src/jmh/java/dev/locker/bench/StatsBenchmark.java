@@ -0,0 +1,77 @@
+package dev.locker.bench;
+
+import dev.locker.domain.Device;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.repo.file.FileBackedLoanRepository;
+import dev.locker.service.LoanAnalytics;
+import dev.locker.service.StatsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StatsService#popularSince} (last 30 days, top 5) and the columnar analytics scans (last
+ * 30 days) over loan histories of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class StatsBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int loans;
+
+    private StatsService service;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DataGenerator data = DataGenerator.ofLoans(loans, 42);
+        Path missing = Path.of("does-not-exist");
+        FileBackedDeviceRepository deviceRepo = new FileBackedDeviceRepository(missing.resolve("devices.json"));
+        deviceRepo.saveAll(data.devices());
+        FileBackedLoanRepository loanRepo = new FileBackedLoanRepository(missing.resolve("loans.json"));
+        loanRepo.saveAll(data.loans());
+        service = new StatsService(deviceRepo, loanRepo);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Device, Long>> popularSince() {
+        return service.popularSince(null, 5);
+    }
+
+    @Benchmark
+    public List<LoanAnalytics.DeviceUtilization> utilization() {
+        return service.utilization(30, 20);
+    }
+
+    @Benchmark
+    public LoanAnalytics.LoanDurations durations() {
+        return service.durations(30);
+    }
+
+    @Benchmark
+    public List<LoanAnalytics.OnTimeRate> onTimeRates() {
+        return service.onTimeRates(30, null, 50);
+    }
+
+    @Benchmark
+    public LoanAnalytics.HourlyBorrows hourly() {
+        return service.hourly(30);
+    }
+}
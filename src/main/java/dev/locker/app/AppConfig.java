@@ -0,0 +1,93 @@
+package dev.locker.app;
+
+import dev.locker.audit.AuditLog;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Startup configuration. Every option can be given as a {@code --name=value} argument or as a
+ * {@code -Dlocker.name=value} system property; arguments win.
+ *
+ * @param dataDir                directory holding the JSON snapshots and journals
+ * @param snapshotInterval       maximum time a write may stay outside a snapshot
+ * @param snapshotDirtyThreshold pending writes that trigger an early snapshot (0 disables)
+ * @param loanStore              storage engine for loans
+ * @param port                   HTTP port to listen on (0 picks an ephemeral port)
+ * @param backlog                TCP accept backlog (0 uses the system default)
+ * @param httpExecutor           how HTTP requests are dispatched
+ * @param httpThreads            number of threads for {@link HttpExecutor#POOL}
+ * @param audit                  whether borrows and returns are written to the audit log
+ * @param auditQueueCapacity     maximum number of audit events waiting to be written
+ * @param auditWhenFull          what happens to an audit event when the queue is full
+ * @param auditMaxBytes          size at which the active audit file is rotated
+ */
+public record AppConfig(Path dataDir, Duration snapshotInterval, long snapshotDirtyThreshold, LoanStore loanStore,
+                        int port, int backlog, HttpExecutor httpExecutor, int httpThreads,
+                        boolean audit, int auditQueueCapacity, AuditLog.FullPolicy auditWhenFull, long auditMaxBytes) {
+    private static final String PROPERTY_PREFIX = "locker.";
+
+    /**
+     * Storage engines available for loans.
+     */
+    public enum LoanStore {
+        /** {@code loans.json} snapshot plus write-ahead journal. */
+        JSON,
+        /** Memory-mapped binary {@code loans.bin}, converted from {@code loans.json} on first use. */
+        MMAP
+    }
+
+    /**
+     * Ways of running HTTP exchanges.
+     */
+    public enum HttpExecutor {
+        /** One virtual thread per request. */
+        VIRTUAL,
+        /** Bounded pool of platform threads; the dispatcher runs requests itself when it is full. */
+        POOL,
+        /** The JDK default: every request runs on the single dispatcher thread. */
+        DEFAULT
+    }
+
+    /**
+     * Build the configuration from command line arguments and system properties.
+     *
+     * @param args the command line arguments
+     * @return the resulting configuration
+     * @throws IllegalArgumentException if an option has an invalid value
+     */
+    public static AppConfig fromArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            int idx = arg.indexOf('=');
+            if (idx < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, idx), arg.substring(idx + 1));
+            }
+        }
+        return new AppConfig(
+                Path.of(option(options, "data-dir", "data")),
+                Duration.parse(option(options, "snapshot-interval", "PT5M")),
+                Long.parseLong(option(options, "snapshot-dirty-threshold", "10000")),
+                LoanStore.valueOf(option(options, "loan-store", "json").toUpperCase(Locale.ROOT)),
+                Integer.parseInt(option(options, "port", "8080")),
+                Integer.parseInt(option(options, "backlog", "0")),
+                HttpExecutor.valueOf(option(options, "http-executor", "virtual").toUpperCase(Locale.ROOT)),
+                Integer.parseInt(option(options, "http-threads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2))),
+                Boolean.parseBoolean(option(options, "audit", "true")),
+                Integer.parseInt(option(options, "audit-queue-capacity", "65536")),
+                AuditLog.FullPolicy.valueOf(option(options, "audit-when-full", "drop").toUpperCase(Locale.ROOT)),
+                Long.parseLong(option(options, "audit-max-bytes", String.valueOf(64L * 1024 * 1024))));
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        if (value != null) return value;
+        return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+    }
+}
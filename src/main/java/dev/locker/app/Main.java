@@ -1,64 +1,291 @@
 package dev.locker.app;
 
 import com.sun.net.httpserver.HttpServer;
+import dev.locker.audit.AuditLog;
 import dev.locker.http.DeviceHandler;
+import dev.locker.http.DeviceJsonCache;
 import dev.locker.http.LoanHandler;
+import dev.locker.http.MetricsHandler;
 import dev.locker.http.Router;
 import dev.locker.http.StatsHandler;
+import dev.locker.metrics.MetricsRegistry;
+import dev.locker.repo.LoanRepository;
 import dev.locker.repo.file.FileBackedDeviceRepository;
 import dev.locker.repo.file.FileBackedLoanRepository;
 import dev.locker.repo.file.FileBackedUserRepository;
+import dev.locker.repo.file.Journal;
+import dev.locker.repo.file.SnapshotScheduler;
+import dev.locker.repo.file.Snapshottable;
+import dev.locker.repo.mmap.LoanFileConverter;
+import dev.locker.repo.mmap.MappedLoanRepository;
 import dev.locker.service.DeviceService;
+import dev.locker.service.LoanAnalytics;
 import dev.locker.service.LoanService;
+import dev.locker.service.OverdueIndex;
+import dev.locker.service.PopularityIndex;
 import dev.locker.service.StatsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Application entry point. Starts a JDK HttpServer and wires repositories, services and handlers.
  */
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
-    private static final int PORT = 8080;
+    private static final int POOL_QUEUE_CAPACITY = 1024;
+    private static final Duration HANDLER_SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final SnapshotScheduler snapshots;
+    private final Journal deviceJournal;
+    private final Journal loanJournal;
+    private final LoanRepository loanRepo;
+    private final AuditLog auditLog;
+    private boolean stopped;
+
+    private Main(HttpServer server, ExecutorService httpExecutor, SnapshotScheduler snapshots,
+                 Journal deviceJournal, Journal loanJournal, LoanRepository loanRepo, AuditLog auditLog) {
+        this.server = server;
+        this.httpExecutor = httpExecutor;
+        this.snapshots = snapshots;
+        this.deviceJournal = deviceJournal;
+        this.loanJournal = loanJournal;
+        this.loanRepo = loanRepo;
+        this.auditLog = auditLog;
+    }
 
     public static void main(String[] args) throws IOException {
-        Path base = Path.of(".");
-        FileBackedDeviceRepository deviceRepo = new FileBackedDeviceRepository(base.resolve("data").resolve("devices.json"));
-        FileBackedUserRepository userRepo = new FileBackedUserRepository(base.resolve("data").resolve("users.json"));
-        FileBackedLoanRepository loanRepo = new FileBackedLoanRepository(base.resolve("data").resolve("loans.json"));
+        Main app = start(AppConfig.fromArgs(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(app::stop));
+    }
+
+    /**
+     * Load the data, wire the services and start the HTTP server. Used by {@link #main} and by
+     * tools that run the application in-process, e.g. load tests on an ephemeral port.
+     *
+     * @param config the application configuration
+     * @return the running application
+     * @throws IOException if the journals cannot be opened or the server cannot bind
+     */
+    public static Main start(AppConfig config) throws IOException {
+        Path data = config.dataDir();
+        Journal deviceJournal = new Journal(data, "devices");
+        Journal loanJournal = config.loanStore() == AppConfig.LoanStore.JSON ? new Journal(data, "loans") : null;
+
+        long loadStart = System.nanoTime();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        var devicesLoading = CompletableFuture.supplyAsync(() -> new FileBackedDeviceRepository(data.resolve("devices.json"), deviceJournal));
+        var usersLoading = CompletableFuture.supplyAsync(() -> new FileBackedUserRepository(data.resolve("users.json")));
+        var loansLoading = CompletableFuture.supplyAsync(() -> openLoanRepository(config, loanJournal));
+        FileBackedDeviceRepository deviceRepo = devicesLoading.join();
+        FileBackedUserRepository userRepo = usersLoading.join();
+        LoanRepository loanRepo = loansLoading.join();
+        logger.info("Loaded {} devices, {} users and {} loans in {} ms (peak heap {} MB)",
+                deviceRepo.findAll().size(), userRepo.findAll().size(), loanRepo.columns().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart), peakHeapBytes() / (1024 * 1024));
 
         DeviceService deviceService = new DeviceService(deviceRepo);
         LoanService loanService = new LoanService(deviceRepo, userRepo, loanRepo);
-        StatsService statsService = new StatsService(deviceRepo, loanRepo);
+        // seeded from the columns and the open loans, so no loan history is materialized
+        PopularityIndex popularity = new PopularityIndex(loanRepo.columns(), Duration.ofDays(StatsService.POPULAR_DAYS));
+        loanService.addListener(popularity);
+        OverdueIndex overdue = new OverdueIndex(loanRepo.findOpenLoans());
+        loanService.addListener(overdue);
+        LoanAnalytics analytics = new LoanAnalytics(loanRepo.columns());
+        StatsService statsService = new StatsService(deviceRepo, loanRepo, popularity, overdue, analytics);
+        AuditLog auditLog = null;
+        if (config.audit()) {
+            auditLog = new AuditLog(data, "audit", config.auditQueueCapacity(), config.auditWhenFull(), config.auditMaxBytes());
+            loanService.addListener(auditLog);
+        }
 
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
-        Router router = new Router(server);
+        HttpServer server = HttpServer.create(new InetSocketAddress(config.port()), config.backlog());
+        ExecutorService httpExecutor = createHttpExecutor(config);
+        server.setExecutor(httpExecutor);
+        MetricsRegistry metrics = new MetricsRegistry();
+        Router router = new Router(server, metrics);
 
-        router.registerGet("/devices", new DeviceHandler(deviceService));
-        router.registerGet("/devices/search", new DeviceHandler(deviceService));
-        router.registerPost("/loans/borrow", new LoanHandler(loanService));
-        router.registerPost("/loans/return", new LoanHandler(loanService));
-        router.registerGet("/stats/popular", new StatsHandler(statsService));
-        // TODO: /stats/overdue will be added in feature branches
+        DeviceHandler devices = new DeviceHandler(deviceService, new DeviceJsonCache(deviceRepo));
+        LoanHandler loans = new LoanHandler(loanService);
+        StatsHandler stats = new StatsHandler(statsService);
+        router.get("/devices", devices::list);
+        router.get("/devices/search", devices::search);
+        router.get("/devices/{id}", devices::get);
+        router.get("/users/{id}/loans", loans::ofUser);
+        router.post("/loans/borrow", loans::borrow);
+        router.post("/loans/return", loans::giveBack);
+        router.post("/loans/borrow/batch", loans::borrowBatch);
+        router.post("/loans/return/batch", loans::giveBackBatch);
+        router.get("/stats/popular", stats::popular);
+        router.get("/stats/overdue", stats::overdue);
+        router.get("/stats/utilization", stats::utilization);
+        router.get("/stats/durations", stats::durations);
+        router.get("/stats/on-time", stats::onTime);
+        router.get("/stats/hourly", stats::hourly);
+        router.registerGet("/metrics", new MetricsHandler(metrics));
 
         server.start();
-        logger.info("Started loan-device-manager on port {} with routes: /devices, /devices/search, /loans/borrow, /loans/return, /stats/popular", PORT);
-
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            logger.info("Shutting down server and persisting data...");
-            server.stop(1);
-            try {
-                deviceRepo.persist();
-                userRepo.persist();
-                loanRepo.persist();
-            } catch (Exception e) {
-                logger.error("Error persisting data on shutdown", e);
+        logger.info("Started loan-device-manager on port {} ({} executor) with routes: /devices, /devices/search, /devices/{id}, /users/{id}/loans, /loans/borrow, /loans/return, /loans/borrow/batch, /loans/return/batch, /stats/popular, /stats/overdue, /stats/utilization, /stats/durations, /stats/on-time, /stats/hourly, /metrics",
+                server.getAddress().getPort(), config.httpExecutor().name().toLowerCase(Locale.ROOT));
+
+        List<Snapshottable> snapshotTargets = new ArrayList<>(List.of(deviceRepo, userRepo));
+        if (loanRepo instanceof Snapshottable s) snapshotTargets.add(s);
+        SnapshotScheduler snapshots = new SnapshotScheduler(snapshotTargets,
+                config.snapshotInterval(), config.snapshotDirtyThreshold());
+        snapshots.start();
+        registerGauges(metrics, deviceRepo, userRepo, loanRepo, overdue, snapshots, snapshotTargets);
+        if (auditLog != null) {
+            AuditLog audit = auditLog;
+            metrics.gauge("locker_audit_queued_events", "Audit events waiting to be written.", audit::queued);
+            metrics.counter("locker_audit_written_events_total", "Audit events written.", audit::written);
+            metrics.counter("locker_audit_dropped_events_total", "Audit events dropped.", audit::dropped);
+        }
+
+        return new Main(server, httpExecutor, snapshots, deviceJournal, loanJournal, loanRepo, auditLog);
+    }
+
+    /**
+     * Return the port the HTTP server is bound to; useful when it was started on port 0.
+     *
+     * @return the bound port
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the HTTP server, wait for running handlers, flush the audit log, write final snapshots
+     * and close the journals. Handlers still running after 30 seconds are interrupted. Further
+     * calls do nothing.
+     */
+    public synchronized void stop() {
+        if (stopped) return;
+        stopped = true;
+        logger.info("Shutting down server and persisting data...");
+        server.stop(1);
+        if (httpExecutor != null) awaitHandlers();
+        try {
+            if (auditLog != null) auditLog.close();
+            snapshots.close();
+            deviceJournal.close();
+            if (loanJournal != null) loanJournal.close();
+            if (loanRepo instanceof Closeable c) c.close();
+        } catch (Exception e) {
+            logger.error("Error persisting data on shutdown", e);
+        }
+    }
+
+    /**
+     * Let handlers that are still inside a write finish, so that every acknowledged write is part
+     * of the final snapshots and nothing writes to a closed journal or store.
+     */
+    private void awaitHandlers() {
+        httpExecutor.shutdown();
+        try {
+            if (!httpExecutor.awaitTermination(HANDLER_SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Handlers still running after {}; interrupting them", HANDLER_SHUTDOWN_TIMEOUT);
+                httpExecutor.shutdownNow();
+                httpExecutor.awaitTermination(1, TimeUnit.SECONDS);
             }
-        }));
+        } catch (InterruptedException e) {
+            httpExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Expose repository sizes and snapshot statistics. The suppliers run only when
+     * {@code /metrics} is scraped.
+     */
+    private static void registerGauges(MetricsRegistry metrics, FileBackedDeviceRepository deviceRepo,
+                                       FileBackedUserRepository userRepo, LoanRepository loanRepo,
+                                       OverdueIndex overdue, SnapshotScheduler snapshots,
+                                       List<Snapshottable> snapshotTargets) {
+        metrics.gauge("locker_devices", "Devices in the catalog.", deviceRepo::count);
+        metrics.gauge("locker_users", "Registered users.", () -> userRepo.findAll().size());
+        metrics.gauge("locker_loans", "Loans in the history, open and returned.", () -> loanRepo.columns().size());
+        metrics.gauge("locker_open_loans", "Loans not returned yet.", overdue::openCount);
+        for (Snapshottable t : snapshotTargets) {
+            String name = t.snapshotName();
+            metrics.gauge("locker_snapshot_pending_writes", "Journaled writes not yet covered by a snapshot.",
+                    "store", name, t::dirtyCount);
+            metrics.counter("locker_snapshots_total", "Snapshots written.",
+                    "store", name, () -> snapshots.stats(name).count());
+            metrics.counter("locker_snapshot_written_bytes_total", "Bytes written by snapshots.",
+                    "store", name, () -> snapshots.stats(name).totalBytes());
+            metrics.gauge("locker_snapshot_last_bytes", "Size of the last snapshot.",
+                    "store", name, () -> snapshots.stats(name).lastBytes());
+            metrics.gauge("locker_snapshot_last_duration_seconds", "Time taken by the last snapshot.",
+                    "store", name, () -> snapshots.stats(name).lastDurationMs() / 1000.0);
+        }
+    }
+
+    /**
+     * Create the executor HTTP exchanges run on, or null to keep the JDK default of running them
+     * on the dispatcher thread.
+     */
+    private static ExecutorService createHttpExecutor(AppConfig config) {
+        return switch (config.httpExecutor()) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-", 0).factory());
+            case POOL -> new ThreadPoolExecutor(config.httpThreads(), config.httpThreads(), 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(POOL_QUEUE_CAPACITY), Thread.ofPlatform().name("http-", 0).factory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            case DEFAULT -> null;
+        };
     }
-}
 
+    /**
+     * Open the configured loan store. The memory-mapped store is converted from
+     * {@code loans.json} the first time it is used.
+     */
+    private static LoanRepository openLoanRepository(AppConfig config, Journal loanJournal) {
+        Path json = config.dataDir().resolve("loans.json");
+        if (config.loanStore() == AppConfig.LoanStore.JSON) {
+            return new FileBackedLoanRepository(json, loanJournal);
+        }
+        Path bin = config.dataDir().resolve("loans.bin");
+        try {
+            if (!Files.exists(bin) && Files.exists(json)) {
+                LoanFileConverter.convert(json, bin);
+            }
+            return new MappedLoanRepository(bin);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sum of the peak usages of all heap memory pools since their last reset. The pools peak at
+     * different times, so this is an upper bound of the actual peak.
+     */
+    private static long peakHeapBytes() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                sum += pool.getPeakUsage().getUsed();
+            }
+        }
+        return sum;
+    }
+}
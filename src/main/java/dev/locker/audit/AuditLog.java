@@ -0,0 +1,311 @@
+package dev.locker.audit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import dev.locker.domain.Loan;
+import dev.locker.service.LoanListener;
+import dev.locker.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Append-only audit trail of borrows and returns, written as one JSON object per line.
+ * <p>
+ * As a {@link LoanListener} it runs inside the service's device lock, so it only enqueues the
+ * loan: the queue is a lock-free linked queue bounded by a CAS-maintained slot count. A single
+ * background thread drains it in batches, serializes each batch into one buffer and appends it
+ * with one write. The active file {@code <name>.ndjson} is rotated to {@code <name>.<n>.ndjson}
+ * before it would exceed the size limit. When the queue is full, events are either dropped and
+ * counted or the caller waits for space, as configured.
+ * <p>
+ * Lines are flushed to the OS but not fsynced; the journals remain the durable record.
+ */
+public final class AuditLog implements LoanListener, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+    private static final int BATCH = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final String SUFFIX = ".ndjson";
+
+    /**
+     * What to do with an event when the queue is full.
+     */
+    public enum FullPolicy {
+        /** Discard the event and count it in {@link #dropped()}. */
+        DROP,
+        /** Wait until the writer has made room; the device lock stays held meanwhile. */
+        BLOCK
+    }
+
+    private final Path dir;
+    private final String name;
+    private final Path active;
+    private final int capacity;
+    private final FullPolicy policy;
+    private final long maxBytes;
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean finished; // the writer has stopped; queued events are stranded
+    private OutputStream out;
+    private long size;
+    private long nextRotation;
+
+    /**
+     * Open the audit log with the given name in the given directory and start its writer thread.
+     * An existing active file is appended to.
+     *
+     * @param dir      the directory holding the audit files
+     * @param name     the base file name, e.g. {@code audit}
+     * @param capacity maximum number of queued events
+     * @param policy   what to do when the queue is full
+     * @param maxBytes size at which the active file is rotated
+     * @throws IOException if the directory or the active file cannot be opened
+     */
+    public AuditLog(Path dir, String name, int capacity, FullPolicy policy, long maxBytes) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.dir = dir;
+        this.name = name;
+        this.active = dir.resolve(name + SUFFIX);
+        this.capacity = capacity;
+        this.policy = policy;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            nextRotation = files.mapToLong(this::rotationNumber).max().orElse(0) + 1;
+        }
+        open();
+        this.writer = Thread.ofPlatform().name("audit-writer").daemon().start(this::run);
+    }
+
+    @Override
+    public void onBorrowed(Loan loan) {
+        enqueue(new Event(Event.BORROWED, loan));
+    }
+
+    @Override
+    public void onReturned(Loan loan) {
+        enqueue(new Event(Event.RETURNED, loan));
+    }
+
+    /**
+     * Return the number of events waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Return the number of events discarded because the queue was full, the log was closed or a
+     * write failed.
+     *
+     * @return the dropped event count
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Return the number of events written to the audit files.
+     *
+     * @return the written event count
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * Write all queued events, stop the writer and close the active file. Events arriving
+     * afterwards are dropped, including those that were being enqueued while the writer made
+     * its final pass.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished = true;
+        dropStranded();
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.error("Failed to close audit log {}", active, e);
+        }
+    }
+
+    private void enqueue(Event event) {
+        if (closed || !reserve()) {
+            dropped.increment();
+            return;
+        }
+        queue.offer(event);
+        // the writer may have made its final pass between the check of closed and the offer
+        if (finished) dropStranded();
+    }
+
+    /**
+     * Count the events left in the queue after the writer has stopped as dropped. Runs in
+     * close() and in enqueuers that offered late: either close() sees the late offer or the
+     * enqueuer sees {@code finished}, so no event goes unaccounted.
+     */
+    private void dropStranded() {
+        while (queue.poll() != null) {
+            queued.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Claim a queue slot. Wakes the writer early once a full batch is waiting.
+     */
+    private boolean reserve() {
+        while (true) {
+            int n = queued.get();
+            if (n < capacity) {
+                if (!queued.compareAndSet(n, n + 1)) continue;
+                if (n + 1 == BATCH) LockSupport.unpark(writer);
+                return true;
+            }
+            if (policy == FullPolicy.DROP || closed) return false;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    private void run() {
+        List<Event> batch = new ArrayList<>(BATCH);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        while (true) {
+            // read before draining: everything enqueued before close() is still written
+            boolean stopping = closed;
+            Event e;
+            while (batch.size() < BATCH && (e = queue.poll()) != null) {
+                batch.add(e);
+            }
+            if (!batch.isEmpty()) {
+                queued.addAndGet(-batch.size());
+                write(batch, buffer);
+                batch.clear();
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Serialize the batch into the buffer and append it. Usually that is one write; when the
+     * active file fills up, the batch is split at a line boundary around the rotation.
+     */
+    private void write(List<Event> batch, ByteArrayOutputStream buffer) {
+        int[] lineEnds = new int[batch.size()];
+        int done = 0;
+        try {
+            buffer.reset();
+            try (JsonGenerator gen = JsonUtil.mapper().getFactory().createGenerator(buffer)) {
+                gen.setRootValueSeparator(null);
+                for (int i = 0; i < lineEnds.length; i++) {
+                    batch.get(i).writeTo(gen);
+                    gen.writeRaw('\n');
+                    gen.flush();
+                    lineEnds[i] = buffer.size();
+                }
+            }
+            byte[] bytes = buffer.toByteArray();
+            int from = 0;
+            for (int i = 0; i < lineEnds.length; i++) {
+                int lineStart = i == 0 ? 0 : lineEnds[i - 1];
+                if (size + lineEnds[i] - from > maxBytes && size + lineStart - from > 0) {
+                    append(bytes, from, lineStart);
+                    written.add(i - done);
+                    done = i;
+                    from = lineStart;
+                    rotate();
+                }
+            }
+            append(bytes, from, bytes.length);
+            written.add(lineEnds.length - done);
+        } catch (IOException e) {
+            dropped.add(lineEnds.length - done);
+            logger.error("Failed to write {} audit events to {}", lineEnds.length - done, active, e);
+        }
+    }
+
+    private void append(byte[] bytes, int from, int to) throws IOException {
+        out.write(bytes, from, to - from);
+        out.flush();
+        size += to - from;
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        Path target = dir.resolve(name + "." + nextRotation++ + SUFFIX);
+        Files.move(active, target);
+        logger.info("Rotated audit log to {}", target);
+        open();
+    }
+
+    private void open() throws IOException {
+        out = Files.newOutputStream(active, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = Files.size(active);
+    }
+
+    private long rotationNumber(Path file) {
+        String f = file.getFileName().toString();
+        String prefix = name + ".";
+        if (!f.startsWith(prefix) || !f.endsWith(SUFFIX) || f.length() <= prefix.length() + SUFFIX.length()) return 0;
+        try {
+            return Long.parseLong(f.substring(prefix.length(), f.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One audit line: the event type and a snapshot of the loan after the event.
+     */
+    private record Event(String type, Loan loan) {
+        static final String BORROWED = "borrowed";
+        static final String RETURNED = "returned";
+
+        void writeTo(JsonGenerator gen) throws IOException {
+            gen.writeStartObject();
+            gen.writeStringField("event", type);
+            gen.writeStringField("at", (type.equals(RETURNED) ? loan.returnedAt() : loan.borrowedAt()).toString());
+            gen.writeStringField("deviceId", loan.deviceId());
+            gen.writeStringField("userId", loan.userId());
+            gen.writeStringField("borrowedAt", loan.borrowedAt().toString());
+            gen.writeStringField("dueAt", loan.dueAt().toString());
+            Instant returnedAt = loan.returnedAt();
+            if (returnedAt != null) gen.writeStringField("returnedAt", returnedAt.toString());
+            gen.writeEndObject();
+        }
+    }
+}
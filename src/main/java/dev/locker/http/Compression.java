@@ -0,0 +1,238 @@
+package dev.locker.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Content-coding negotiation and gzip / deflate compression of response bodies.
+ * <p>
+ * A {@link Deflater} holds native zlib state, so compressors are not created per response but
+ * taken from a small pool per coding and reset after use. The gzip framing (header, CRC-32 and
+ * length trailer) is written here around a raw deflate stream; {@code deflate} is the zlib format
+ * as HTTP defines it. Bodies shorter than {@link #MIN_BYTES} are not worth the CPU and framing
+ * overhead and are always sent as they are.
+ */
+public final class Compression {
+    /**
+     * Smallest body that is compressed when the client accepts it.
+     */
+    public static final int MIN_BYTES = 1024;
+
+    private static final int LEVEL = Deflater.DEFAULT_COMPRESSION;
+    private static final int POOL_SIZE = 16;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * Content codings this server can produce.
+     */
+    public enum Encoding {
+        IDENTITY(null),
+        GZIP("gzip"),
+        DEFLATE("deflate");
+
+        private final String token;
+        private final BlockingQueue<Deflater> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        /**
+         * Return the {@code Content-Encoding} value of this coding.
+         *
+         * @return the header token, or null for identity
+         */
+        public String token() {
+            return token;
+        }
+
+        private Deflater acquire() {
+            Deflater deflater = pool.poll();
+            return deflater != null ? deflater : new Deflater(LEVEL, this == GZIP);
+        }
+
+        private void release(Deflater deflater) {
+            deflater.reset();
+            if (!pool.offer(deflater)) deflater.end();
+        }
+    }
+
+    private Compression() {
+    }
+
+    /**
+     * Pick the coding for a response from the request's {@code Accept-Encoding} header lines.
+     * gzip is preferred over deflate at equal quality; codings with {@code q=0} are never chosen.
+     *
+     * @param acceptEncoding the header values; null or empty if the header is absent
+     * @return the coding to use, {@link Encoding#IDENTITY} if nothing acceptable is supported
+     */
+    public static Encoding negotiate(List<String> acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) return Encoding.IDENTITY;
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String line : acceptEncoding) {
+            for (String part : line.split(",")) {
+                String[] params = part.split(";");
+                String coding = params[0].trim().toLowerCase(Locale.ROOT);
+                double q = quality(params);
+                switch (coding) {
+                    case "gzip", "x-gzip" -> gzip = Math.max(gzip, q);
+                    case "deflate" -> deflate = Math.max(deflate, q);
+                    case "*" -> any = Math.max(any, q);
+                    default -> {
+                    }
+                }
+            }
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip > 0 && gzip >= deflate) return Encoding.GZIP;
+        if (deflate > 0) return Encoding.DEFLATE;
+        return Encoding.IDENTITY;
+    }
+
+    /**
+     * Pick the coding for a body of known length: identity below {@link #MIN_BYTES}, otherwise
+     * as {@link #negotiate(List)}.
+     *
+     * @param acceptEncoding the header values; null or empty if the header is absent
+     * @param length         the uncompressed body length
+     * @return the coding to use
+     */
+    public static Encoding negotiate(List<String> acceptEncoding, int length) {
+        return length < MIN_BYTES ? Encoding.IDENTITY : negotiate(acceptEncoding);
+    }
+
+    /**
+     * Compress a byte range with the given coding.
+     *
+     * @param data     the bytes to compress
+     * @param off      start of the range
+     * @param len      length of the range
+     * @param encoding the coding; {@link Encoding#IDENTITY} returns a copy of the range
+     * @return the encoded bytes
+     */
+    public static byte[] compress(byte[] data, int off, int len, Encoding encoding) {
+        if (encoding == Encoding.IDENTITY) return Arrays.copyOfRange(data, off, off + len);
+        boolean gzip = encoding == Encoding.GZIP;
+        Deflater deflater = encoding.acquire();
+        try {
+            deflater.setInput(data, off, len);
+            deflater.finish();
+            byte[] out = new byte[Math.max(64, len / 4)];
+            int pos = 0;
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                pos = GZIP_HEADER.length;
+            }
+            while (!deflater.finished()) {
+                if (pos == out.length) out = Arrays.copyOf(out, out.length * 2);
+                pos += deflater.deflate(out, pos, out.length - pos);
+            }
+            if (!gzip) return Arrays.copyOf(out, pos);
+            CRC32 crc = new CRC32();
+            crc.update(data, off, len);
+            out = Arrays.copyOf(out, pos + 8);
+            writeIntLE(out, pos, (int) crc.getValue());
+            writeIntLE(out, pos + 4, len);
+            return out;
+        } finally {
+            encoding.release(deflater);
+        }
+    }
+
+    /**
+     * Wrap a response stream so that everything written to it is compressed with the given
+     * coding. Closing the returned stream finishes the encoding, returns the compressor to its
+     * pool and closes {@code out}.
+     *
+     * @param out      the stream receiving the encoded bytes
+     * @param encoding the coding; {@link Encoding#IDENTITY} returns {@code out} itself
+     * @return the stream to write the uncompressed body to
+     * @throws IOException if the gzip header cannot be written
+     */
+    public static OutputStream wrap(OutputStream out, Encoding encoding) throws IOException {
+        if (encoding == Encoding.IDENTITY) return out;
+        return new PooledDeflaterStream(out, encoding);
+    }
+
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static void writeIntLE(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >>> 8);
+        b[pos + 2] = (byte) (value >>> 16);
+        b[pos + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Deflater stream over a pooled compressor, adding the gzip framing for {@link Encoding#GZIP}.
+     */
+    private static final class PooledDeflaterStream extends DeflaterOutputStream {
+        private final Encoding encoding;
+        private final CRC32 crc = new CRC32();
+        private long length;
+        private boolean finished;
+        private boolean released;
+
+        PooledDeflaterStream(OutputStream out, Encoding encoding) throws IOException {
+            super(out, encoding.acquire());
+            this.encoding = encoding;
+            if (encoding == Encoding.GZIP) out.write(GZIP_HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) return;
+            super.finish();
+            finished = true;
+            if (encoding == Encoding.GZIP) {
+                byte[] trailer = new byte[8];
+                writeIntLE(trailer, 0, (int) crc.getValue());
+                writeIntLE(trailer, 4, (int) length);
+                out.write(trailer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!released) {
+                    released = true;
+                    encoding.release(def);
+                }
+            }
+        }
+    }
+}
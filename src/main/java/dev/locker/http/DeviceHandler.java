@@ -1,21 +1,27 @@
 package dev.locker.http;
 
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import dev.locker.domain.Device;
 import dev.locker.service.DeviceService;
+import dev.locker.service.NotFoundException;
 
 import java.io.IOException;
-import java.net.URI;
+import java.io.OutputStream;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
- * HTTP handler for device-related endpoints.
+ * HTTP endpoints for devices. Each public method serves one route registered with the
+ * {@link Router}. Every device response is a function of the catalog version and the request
+ * URI, which makes the catalog version the ETag.
  */
-@SuppressWarnings("ClassCanBeRecord")
-public class DeviceHandler implements HttpHandler {
+public class DeviceHandler {
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
     private final DeviceService deviceService;
+    private final DeviceJsonCache deviceJson;
+    private final ResponseCache cache = new ResponseCache();
 
     /**
      * Constructor for DeviceHandler.
@@ -23,30 +29,80 @@ public class DeviceHandler implements HttpHandler {
      * @param deviceService the device service
      */
     public DeviceHandler(DeviceService deviceService) {
+        this(deviceService, new DeviceJsonCache());
+    }
+
+    /**
+     * Create a DeviceHandler writing devices from the given fragment cache, which may be shared
+     * with other handlers.
+     *
+     * @param deviceService the device service
+     * @param deviceJson    the cache of serialized devices
+     */
+    public DeviceHandler(DeviceService deviceService, DeviceJsonCache deviceJson) {
         this.deviceService = deviceService;
+        this.deviceJson = deviceJson;
     }
 
     /**
-     * Handles HTTP requests for device-related endpoints.
+     * {@code GET /devices}: all devices, streamed, or one page of them with {@code limit} and
+     * {@code after}.
      *
-     * @param exchange the HTTP exchange
+     * @param request the matched request
      * @throws IOException if an I/O error occurs
      */
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        URI requestURI = exchange.getRequestURI();
-        Map<String, String> parseQuery = Router.parseQuery(requestURI);
-        if ("/devices".equals(requestURI.getPath())) {
-            List<Device> devices = deviceService.listAll();
-            HttpUtil.sendJson(exchange, 200, devices);
+    public void list(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        if (ResponseCache.notModified(exchange, etag())) return;
+        String after = request.query("after");
+        String limitParam = request.query("limit");
+        if (limitParam == null && after == null) {
+            try (OutputStream out = HttpUtil.startJsonStream(exchange, 200)) {
+                deviceJson.writeArray(out, deviceService.iterateAll());
+            }
             return;
         }
-        if ("/devices/search".equals(requestURI.getPath())) {
-            String query = parseQuery.getOrDefault("q", "");
-            List<Device> result = deviceService.search(query);
-            HttpUtil.sendJson(exchange, 200, result);
-            return;
+        int limit = Math.min(Math.max(1, request.intQuery("limit", DEFAULT_PAGE)), MAX_PAGE);
+        List<Device> page = deviceService.page(after == null || after.isEmpty() ? null : after, limit);
+        if (page.size() == limit) {
+            exchange.getResponseHeaders().set("X-Next-After", page.get(page.size() - 1).id());
+        }
+        HttpUtil.sendJson(exchange, 200, deviceJson.toArray(page));
+    }
+
+    /**
+     * {@code GET /devices/search}: devices matching the terms of {@code q} and carrying every tag
+     * of the comma separated {@code tag}, with {@code offset} and {@code limit}.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void search(Request request) throws IOException {
+        String query = request.query("q", "");
+        Set<String> tags = new HashSet<>();
+        for (String tag : request.query("tag", "").split(",")) {
+            if (!tag.isBlank()) tags.add(tag.trim());
         }
-        HttpUtil.sendError(exchange, 404, "Not found");
+        int offset = Math.max(0, request.intQuery("offset", 0));
+        int limit = request.intQuery("limit", Integer.MAX_VALUE);
+        cache.sendEncoded(request.exchange(), etag(), () -> deviceJson.toArray(deviceService.search(query, tags, offset, limit)));
+    }
+
+    /**
+     * {@code GET /devices/{id}}: one device, or 404.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void get(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        if (ResponseCache.notModified(exchange, etag())) return;
+        Device device = deviceService.findById(request.pathParam("id"))
+                .orElseThrow(() -> new NotFoundException("Device not found"));
+        HttpUtil.sendJson(exchange, 200, deviceJson.fragment(device));
+    }
+
+    private String etag() {
+        return ResponseCache.etag("d", deviceService.version());
     }
 }
@@ -0,0 +1,101 @@
+package dev.locker.http;
+
+import dev.locker.domain.Device;
+import dev.locker.repo.DeviceRepository;
+import dev.locker.util.JsonUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UTF-8 JSON of every device, serialized once and reused by all catalog responses.
+ * <p>
+ * Device lists are written by concatenating the cached fragments between brackets and commas,
+ * which produces the same bytes as serializing the list with {@link JsonUtil#mapper()}. A
+ * fragment is only used for the very {@link Device} instance it was rendered from: saving a
+ * device stores a new instance, so a stale fragment can never be served even if it is cached by
+ * a reader racing with the save. Saves also drop the device's fragment right away.
+ */
+public final class DeviceJsonCache {
+    private final Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty cache; fragments are replaced lazily when their device changes.
+     */
+    public DeviceJsonCache() {
+    }
+
+    /**
+     * Create an empty cache that drops a device's fragment whenever the repository saves it.
+     *
+     * @param repo the repository whose saves invalidate fragments
+     */
+    public DeviceJsonCache(DeviceRepository repo) {
+        repo.addSaveListener(device -> fragments.remove(device.id()));
+    }
+
+    /**
+     * Return the JSON of the given device, serializing it only if it is not cached yet.
+     *
+     * @param device the device
+     * @return the UTF-8 encoded JSON object; must not be modified
+     * @throws IOException if the device cannot be serialized
+     */
+    public byte[] fragment(Device device) throws IOException {
+        Fragment cached = fragments.get(device.id());
+        if (cached != null && cached.device() == device) return cached.json();
+        byte[] json = JsonUtil.mapper().writeValueAsBytes(device);
+        fragments.put(device.id(), new Fragment(device, json));
+        return json;
+    }
+
+    /**
+     * Serialize the given devices as a JSON array.
+     *
+     * @param devices the devices, in output order
+     * @return the UTF-8 encoded JSON array
+     * @throws IOException if a device cannot be serialized
+     */
+    public byte[] toArray(List<Device> devices) throws IOException {
+        byte[][] parts = new byte[devices.size()][];
+        int length = 2 + Math.max(0, parts.length - 1);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = fragment(devices.get(i));
+            length += parts[i].length;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        out[pos++] = '[';
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) out[pos++] = ',';
+            System.arraycopy(parts[i], 0, out, pos, parts[i].length);
+            pos += parts[i].length;
+        }
+        out[pos] = ']';
+        return out;
+    }
+
+    /**
+     * Write the given devices to the stream as a JSON array, one fragment at a time.
+     *
+     * @param out     the stream to write to; not closed
+     * @param devices the devices, iterated exactly once
+     * @throws IOException if writing or serializing fails
+     */
+    public void writeArray(OutputStream out, Iterable<Device> devices) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (Device device : devices) {
+            if (!first) out.write(',');
+            out.write(fragment(device));
+            first = false;
+        }
+        out.write(']');
+    }
+
+    private record Fragment(Device device, byte[] json) {
+    }
+}
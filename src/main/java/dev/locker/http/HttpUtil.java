@@ -1,17 +1,29 @@
 package dev.locker.http;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import dev.locker.util.JsonUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Helpers for reading request bodies and writing JSON responses.
  */
 @SuppressWarnings("unused")
 public final class HttpUtil {
+    private static final ObjectWriter STREAM_WRITER = JsonUtil.mapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     private HttpUtil() {
     }
 
@@ -23,18 +35,14 @@ public final class HttpUtil {
      * @throws IOException if an I/O error occurs reading the request
      */
     public static byte[] readRequestBody(HttpExchange exchange) throws IOException {
-        try (InputStream in = exchange.getRequestBody(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            byte[] buf = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = in.read(buf)) != -1) {
-                out.write(buf, 0, bytesRead);
-            }
-            return out.toByteArray();
+        try (InputStream in = exchange.getRequestBody()) {
+            return in.readAllBytes();
         }
     }
 
     /**
-     * Read and deserialize the JSON request body into an object of the given class.
+     * Read and deserialize the JSON request body into an object of the given class. The parser
+     * reads straight from the request stream; the body is never copied into an array.
      *
      * @param exchange the HttpExchange to read from
      * @param clazz    the class of the object to deserialize into
@@ -43,13 +51,18 @@ public final class HttpUtil {
      * @throws IOException if an I/O error occurs reading the request or deserializing the JSON
      */
     public static <T> T readJson(HttpExchange exchange, Class<T> clazz) throws IOException {
-        byte[] bytes = readRequestBody(exchange);
-        if (bytes.length == 0) return null;
-        return JsonUtil.mapper().readValue(bytes, clazz);
+        try (InputStream in = exchange.getRequestBody();
+             JsonParser parser = JsonUtil.mapper().createParser(in)) {
+            if (parser.nextToken() == null) return null;
+            return JsonUtil.mapper().readValue(parser, clazz);
+        }
     }
 
     /**
-     * Serialize the given object as JSON and send it in the response with the given status.
+     * Serialize the given object as JSON and send it in the response with the given status. The
+     * JSON is rendered into a pooled buffer so that {@code Content-Length} is known up front
+     * without allocating a fresh array per response. Bodies of at least
+     * {@link Compression#MIN_BYTES} are compressed if the client accepts gzip or deflate.
      *
      * @param exchange the HttpExchange to send the response to
      * @param status   the HTTP status code to send
@@ -57,11 +70,108 @@ public final class HttpUtil {
      * @throws IOException if an I/O error occurs sending the response
      */
     public static void sendJson(HttpExchange exchange, int status, Object obj) throws IOException {
-        byte[] bytes = JsonUtil.mapper().writeValueAsBytes(obj);
-        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-        exchange.sendResponseHeaders(status, bytes.length);
-        exchange.getResponseBody().write(bytes);
-        exchange.getResponseBody().close();
+        ResponseBuffer buffer = ResponseBuffer.acquire();
+        try {
+            JsonUtil.mapper().writeValue(buffer, obj);
+            Compression.Encoding encoding = Compression.negotiate(acceptEncoding(exchange), buffer.size);
+            if (encoding == Compression.Encoding.IDENTITY) {
+                sendEncoded(exchange, status, buffer.bytes, buffer.size, encoding);
+            } else {
+                byte[] body = Compression.compress(buffer.bytes, 0, buffer.size, encoding);
+                sendEncoded(exchange, status, body, body.length, encoding);
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Send an already serialized JSON body in the response with the given status, compressed
+     * like {@link #sendJson(HttpExchange, int, Object)}.
+     *
+     * @param exchange the HttpExchange to send the response to
+     * @param status   the HTTP status code to send
+     * @param json     the UTF-8 encoded JSON body
+     * @throws IOException if an I/O error occurs sending the response
+     */
+    public static void sendJson(HttpExchange exchange, int status, byte[] json) throws IOException {
+        Compression.Encoding encoding = Compression.negotiate(acceptEncoding(exchange), json.length);
+        byte[] body = encoding == Compression.Encoding.IDENTITY ? json : Compression.compress(json, 0, json.length, encoding);
+        sendEncoded(exchange, status, body, body.length, encoding);
+    }
+
+    /**
+     * Send a JSON body that has already been encoded with the given content coding, e.g. a
+     * cached compressed response.
+     *
+     * @param exchange the HttpExchange to send the response to
+     * @param status   the HTTP status code to send
+     * @param body     the encoded body
+     * @param length   number of bytes of {@code body} to send
+     * @param encoding the coding {@code body} is in
+     * @throws IOException if an I/O error occurs sending the response
+     */
+    public static void sendEncoded(HttpExchange exchange, int status, byte[] body, int length,
+                                   Compression.Encoding encoding) throws IOException {
+        jsonHeaders(exchange, encoding);
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, 0, length);
+        }
+    }
+
+    /**
+     * Return the {@code Accept-Encoding} header lines of the request.
+     *
+     * @param exchange the HttpExchange to inspect
+     * @return the header values, or null if the header is absent
+     */
+    public static List<String> acceptEncoding(HttpExchange exchange) {
+        return exchange.getRequestHeaders().get("Accept-Encoding");
+    }
+
+    /**
+     * Start a JSON response with chunked transfer encoding, compressed with gzip or deflate if
+     * the client accepts it. The length is unknown, so there is no size threshold.
+     *
+     * @param exchange the HttpExchange to send the response to
+     * @param status   the HTTP status code to send
+     * @return the stream to write the uncompressed JSON to; must be closed
+     * @throws IOException if an I/O error occurs sending the headers
+     */
+    public static OutputStream startJsonStream(HttpExchange exchange, int status) throws IOException {
+        Compression.Encoding encoding = Compression.negotiate(acceptEncoding(exchange));
+        jsonHeaders(exchange, encoding);
+        exchange.sendResponseHeaders(status, 0);
+        return Compression.wrap(exchange.getResponseBody(), encoding);
+    }
+
+    /**
+     * Stream the given items as a JSON array with chunked transfer encoding. Elements are written
+     * one by one through a {@link JsonGenerator}, so memory use does not depend on the number of
+     * items and the first bytes leave before the last item has been serialized.
+     *
+     * @param exchange the HttpExchange to send the response to
+     * @param status   the HTTP status code to send
+     * @param items    the items to write, iterated exactly once
+     * @throws IOException if an I/O error occurs sending the response
+     */
+    public static void streamJson(HttpExchange exchange, int status, Iterable<?> items) throws IOException {
+        try (OutputStream out = startJsonStream(exchange, status);
+             JsonGenerator gen = STREAM_WRITER.createGenerator(out)) {
+            gen.writeStartArray();
+            for (Object item : items) {
+                STREAM_WRITER.writeValue(gen, item);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static void jsonHeaders(HttpExchange exchange, Compression.Encoding encoding) {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        headers.set("Vary", "Accept-Encoding");
+        if (encoding != Compression.Encoding.IDENTITY) headers.set("Content-Encoding", encoding.token());
     }
 
     /**
@@ -91,4 +201,48 @@ public final class HttpUtil {
 
     private record ErrorPayload(String error) {
     }
+
+    /**
+     * Growable byte buffer recycled across responses. A bounded number of buffers is pooled;
+     * buffers that grew past {@link #MAX_POOLED_BYTES} for an unusually large response are left
+     * to the garbage collector instead of being retained.
+     */
+    private static final class ResponseBuffer extends OutputStream {
+        private static final int POOL_SIZE = 64;
+        private static final int INITIAL_BYTES = 8 * 1024;
+        private static final int MAX_POOLED_BYTES = 256 * 1024;
+        private static final BlockingQueue<ResponseBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private byte[] bytes = new byte[INITIAL_BYTES];
+        private int size;
+
+        static ResponseBuffer acquire() {
+            ResponseBuffer buffer = POOL.poll();
+            return buffer != null ? buffer : new ResponseBuffer();
+        }
+
+        void release() {
+            size = 0;
+            if (bytes.length <= MAX_POOLED_BYTES) POOL.offer(this);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
 }
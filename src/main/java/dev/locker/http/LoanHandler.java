@@ -1,19 +1,32 @@
 package dev.locker.http;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
-import dev.locker.service.ConflictException;
+import dev.locker.domain.Loan;
+import dev.locker.service.BatchResult;
+import dev.locker.service.BorrowRequest;
 import dev.locker.service.LoanService;
-import dev.locker.service.NotFoundException;
-import dev.locker.service.ValidationException;
+import dev.locker.util.DomainJsonModule;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Handles loan borrow and return endpoints.
+ * HTTP endpoints for loans: borrow and return, single and batched, and a user's loans. Each
+ * public method serves one route registered with the {@link Router}, which also turns service
+ * exceptions into 400/404/409 responses. Batch responses carry one {@code status} per item,
+ * with the same codes the single endpoints would answer.
  */
 @SuppressWarnings("ClassCanBeRecord")
-public class LoanHandler implements HttpHandler {
+public class LoanHandler {
+    private static final int MAX_BATCH = 1000;
     private final LoanService loanService;
 
     /**
@@ -26,55 +39,130 @@ public class LoanHandler implements HttpHandler {
     }
 
     /**
-     * Handles HTTP requests for loan-related endpoints.
+     * {@code POST /loans/borrow}: body {@code { deviceId, userId, days }}; 201 with the loan.
      *
-     * @param exchange the HTTP exchange
+     * @param request the matched request
      * @throws IOException if an I/O error occurs
      */
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        try {
-            if ("/loans/borrow".equals(path)) {
-                BorrowRequest req = HttpUtil.readJson(exchange, BorrowRequest.class);
-                if (req == null) {
-                    HttpUtil.sendError(exchange, 400, "Missing body");
-                    return;
-                }
-                var loan = loanService.borrow(req.deviceId, req.userId, req.days);
-                HttpUtil.sendJson(exchange, 201, loan);
-                return;
-            }
-            if ("/loans/return".equals(path)) {
-                ReturnRequest req = HttpUtil.readJson(exchange, ReturnRequest.class);
-                if (req == null || req.deviceId == null) {
-                    HttpUtil.sendError(exchange, 400, "Missing deviceId");
-                    return;
-                }
-                var res = loanService.returnDevice(req.deviceId);
-                HttpUtil.sendJson(exchange, 200, res);
-                return;
-            }
-            HttpUtil.sendError(exchange, 404, "Not found");
-        } catch (ValidationException e) {
-            HttpUtil.sendError(exchange, 400, e.getMessage());
-        } catch (NotFoundException e) {
-            HttpUtil.sendError(exchange, 404, e.getMessage());
-        } catch (ConflictException e) {
-            HttpUtil.sendError(exchange, 409, e.getMessage());
-        } catch (Exception e) {
-            HttpUtil.sendError(exchange, 500, "Internal error");
+    public void borrow(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        BorrowRequest req = HttpUtil.readJson(exchange, BorrowRequest.class);
+        if (req == null) {
+            HttpUtil.sendError(exchange, 400, "Missing body");
+            return;
         }
+        HttpUtil.sendJson(exchange, 201, loanService.borrow(req.deviceId(), req.userId(), req.days()));
     }
 
-    private static class BorrowRequest {
-        public String deviceId;
-        public String userId;
-        public Integer days;
+    /**
+     * {@code POST /loans/return}: body {@code { deviceId }}; 200 with the returned loan.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void giveBack(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        ReturnRequest req = HttpUtil.readJson(exchange, ReturnRequest.class);
+        if (req == null || req.deviceId == null) {
+            HttpUtil.sendError(exchange, 400, "Missing deviceId");
+            return;
+        }
+        HttpUtil.sendJson(exchange, 200, loanService.returnDevice(req.deviceId));
+    }
+
+    /**
+     * {@code POST /loans/borrow/batch}: an array of borrow bodies; 200 with one item each.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void borrowBatch(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        BorrowRequest[] req = HttpUtil.readJson(exchange, BorrowRequest[].class);
+        if (req == null || req.length > MAX_BATCH) {
+            HttpUtil.sendError(exchange, 400, req == null ? "Missing body" : "Batch too large");
+            return;
+        }
+        List<BorrowRequest> items = Arrays.stream(req)
+                .map(r -> r == null ? new BorrowRequest(null, null, null) : r)
+                .toList();
+        HttpUtil.sendJson(exchange, 200, toItems(loanService.borrowBatch(items), 201));
+    }
+
+    /**
+     * {@code POST /loans/return/batch}: an array of return bodies; 200 with one item each.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void giveBackBatch(Request request) throws IOException {
+        HttpExchange exchange = request.exchange();
+        ReturnRequest[] req = HttpUtil.readJson(exchange, ReturnRequest[].class);
+        if (req == null || req.length > MAX_BATCH) {
+            HttpUtil.sendError(exchange, 400, req == null ? "Missing body" : "Batch too large");
+            return;
+        }
+        List<String> deviceIds = new ArrayList<>(req.length);
+        for (ReturnRequest r : req) {
+            deviceIds.add(r == null ? null : r.deviceId);
+        }
+        HttpUtil.sendJson(exchange, 200, toItems(loanService.returnBatch(deviceIds), 200));
+    }
+
+    /**
+     * {@code GET /users/{id}/loans}: all loans of the user, or 404 if there is no such user.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void ofUser(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, loanService.loansOf(request.pathParam("id")));
+    }
+
+    private static List<BatchItem> toItems(List<BatchResult> results, int successStatus) {
+        List<BatchItem> items = new ArrayList<>(results.size());
+        for (BatchResult r : results) {
+            items.add(r.error() == null
+                    ? new BatchItem(successStatus, r.loan(), null)
+                    : new BatchItem(Router.statusOf(r.error()), null, r.error().getMessage()));
+        }
+        return items;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record BatchItem(int status, Loan loan, String error) {
     }
 
+    @JsonDeserialize(using = ReturnRequestDeserializer.class)
     private static class ReturnRequest {
         public String deviceId;
     }
+
+    private static final class ReturnRequestDeserializer extends StdDeserializer<ReturnRequest> {
+        ReturnRequestDeserializer() {
+            super(ReturnRequest.class);
+        }
+
+        @Override
+        public ReturnRequest deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.START_OBJECT) {
+                t = p.nextToken();
+            } else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+                return (ReturnRequest) ctxt.handleUnexpectedToken(ReturnRequest.class, p);
+            }
+            ReturnRequest request = new ReturnRequest();
+            for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                String field = p.currentName();
+                p.nextToken();
+                if (field.equals("deviceId")) {
+                    request.deviceId = DomainJsonModule.readString(p, ctxt);
+                } else {
+                    ctxt.handleUnknownProperty(p, this, ReturnRequest.class, field);
+                }
+            }
+            return request;
+        }
+    }
 }
 
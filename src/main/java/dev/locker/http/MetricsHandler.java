@@ -0,0 +1,42 @@
+package dev.locker.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import dev.locker.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Handler for the metrics endpoint, in the Prometheus text format.
+ */
+@SuppressWarnings("ClassCanBeRecord")
+public class MetricsHandler implements HttpHandler {
+    private final MetricsRegistry metrics;
+
+    /**
+     * Create a new MetricsHandler that serves the given registry.
+     *
+     * @param metrics the registry to scrape
+     */
+    public MetricsHandler(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Handle an incoming HTTP request for the metrics endpoint.
+     *
+     * @param exchange the HTTP exchange representing request and response
+     * @throws IOException on I/O errors while writing the exchange
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", MetricsRegistry.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dev.locker.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.util.Map;
+
+/**
+ * A request matched by the {@link Router}: the exchange plus the values of the route's path
+ * parameters. Query parameters are parsed on first access, so routes that do not read them
+ * never pay for it.
+ */
+public final class Request {
+    private final HttpExchange exchange;
+    private final String[] paramNames;
+    private final String[] paramValues;
+    private Map<String, String> query;
+
+    Request(HttpExchange exchange, String[] paramNames, String[] paramValues) {
+        this.exchange = exchange;
+        this.paramNames = paramNames;
+        this.paramValues = paramValues;
+    }
+
+    /**
+     * Return the underlying exchange, to read the body and send the response.
+     *
+     * @return the HTTP exchange
+     */
+    public HttpExchange exchange() {
+        return exchange;
+    }
+
+    /**
+     * Return the value of a path parameter, e.g. {@code id} for a route {@code /devices/{id}}.
+     *
+     * @param name the parameter name as written in the route
+     * @return the decoded path segment
+     * @throws IllegalArgumentException if the route has no such parameter
+     */
+    public String pathParam(String name) {
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(name)) return paramValues[i];
+        }
+        throw new IllegalArgumentException("No path parameter " + name);
+    }
+
+    /**
+     * Return a query parameter (first value wins).
+     *
+     * @param name the parameter name
+     * @return the decoded value, "" for a parameter without value, or null if absent
+     */
+    public String query(String name) {
+        if (query == null) query = Router.parseQuery(exchange.getRequestURI());
+        return query.get(name);
+    }
+
+    /**
+     * Return a query parameter, or a default if it is absent.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent
+     * @return the decoded value or the default
+     */
+    public String query(String name, String defaultValue) {
+        String value = query(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Return an integer query parameter, or a default if it is absent or not a number.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent or malformed
+     * @return the parsed value or the default
+     */
+    public int intQuery(String name, int defaultValue) {
+        String value = query(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return defaultValue;
+    }
+}
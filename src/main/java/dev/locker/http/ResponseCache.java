@@ -0,0 +1,162 @@
+package dev.locker.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import dev.locker.util.JsonUtil;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Conditional GETs and cached bodies for responses derived from versioned data.
+ * <p>
+ * Handlers describe a response by a strong entity tag that changes whenever the response would,
+ * usually built from repository versions. A request whose {@code If-None-Match} lists the current
+ * tag is answered with {@code 304 Not Modified} before anything is computed. Otherwise the JSON
+ * body last sent for the same path and query is reused as long as its tag is still current, so
+ * polling unchanged data costs neither a service call nor serialization. Compressed forms of a
+ * cached body are kept alongside it, so they are computed once per version and coding as well.
+ * <p>
+ * The cache is bounded: bodies above {@link #MAX_BODY_BYTES} are not kept, and the cache is
+ * cleared when it reaches {@link #MAX_ENTRIES} distinct requests.
+ */
+public final class ResponseCache {
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_BODY_BYTES = 256 * 1024;
+    // versions restart at zero with the process, so tags also name the process they came from
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Build a strong entity tag from the given parts, e.g. {@code etag("d", 42)} gives
+     * {@code "d-42-<epoch>"} including the quotes, where the epoch identifies this process.
+     *
+     * @param parts values that together identify one version of a response
+     * @return the quoted entity tag
+     */
+    public static String etag(Object... parts) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) sb.append('-');
+            sb.append(parts[i]);
+        }
+        return sb.append('-').append(EPOCH).append('"').toString();
+    }
+
+    /**
+     * Set the {@code ETag} header and, if the request's {@code If-None-Match} matches it, send
+     * {@code 304 Not Modified}.
+     *
+     * @param exchange the HTTP exchange
+     * @param etag     the current entity tag of the response
+     * @return true if the 304 has been sent and the handler is done
+     * @throws IOException if an I/O error occurs sending the response
+     */
+    public static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (!matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) return false;
+        HttpUtil.sendEmpty(exchange, 304);
+        return true;
+    }
+
+    /**
+     * Send a 200 JSON response tagged with {@code etag}: a 304 if the client has it already, the
+     * cached body if it is current, and otherwise the freshly rendered result of {@code body}.
+     *
+     * @param exchange the HTTP exchange
+     * @param etag     the current entity tag of the response
+     * @param body     computes the object to serialize; only called on a cache miss
+     * @throws IOException if an I/O error occurs sending the response
+     */
+    public void sendJson(HttpExchange exchange, String etag, Supplier<?> body) throws IOException {
+        sendEncoded(exchange, etag, () -> JsonUtil.mapper().writeValueAsBytes(body.get()));
+    }
+
+    /**
+     * Like {@link #sendJson(HttpExchange, String, Supplier)}, for handlers that produce the JSON
+     * bytes themselves.
+     *
+     * @param exchange the HTTP exchange
+     * @param etag     the current entity tag of the response
+     * @param encoder  produces the UTF-8 encoded JSON body; only called on a cache miss
+     * @throws IOException if encoding fails or an I/O error occurs sending the response
+     */
+    public void sendEncoded(HttpExchange exchange, String etag, Encoder encoder) throws IOException {
+        if (notModified(exchange, etag)) return;
+        URI uri = exchange.getRequestURI();
+        String key = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.etag.equals(etag)) {
+            entry = new Entry(etag, encoder.encode());
+            if (entry.json.length <= MAX_BODY_BYTES) {
+                if (entries.size() >= MAX_ENTRIES) entries.clear();
+                entries.put(key, entry);
+            }
+        }
+        Compression.Encoding encoding = Compression.negotiate(HttpUtil.acceptEncoding(exchange), entry.json.length);
+        if (encoding != Compression.Encoding.IDENTITY) {
+            // the compressed bytes differ from the identity ones, so they only share a weak tag
+            exchange.getResponseHeaders().set("ETag", "W/" + etag);
+        }
+        byte[] body = entry.body(encoding);
+        HttpUtil.sendEncoded(exchange, 200, body, body.length, encoding);
+    }
+
+    /**
+     * Evaluate an {@code If-None-Match} header against a tag, using the weak comparison the
+     * header calls for.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Produces an encoded JSON response body.
+     */
+    @FunctionalInterface
+    public interface Encoder {
+        /**
+         * Encode the response body.
+         *
+         * @return the UTF-8 encoded JSON
+         * @throws IOException if encoding fails
+         */
+        byte[] encode() throws IOException;
+    }
+
+    /**
+     * One cached response: the JSON and, once requested, its compressed forms.
+     */
+    private static final class Entry {
+        final String etag;
+        final byte[] json;
+        private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(Compression.Encoding.values().length);
+
+        Entry(String etag, byte[] json) {
+            this.etag = etag;
+            this.json = json;
+        }
+
+        byte[] body(Compression.Encoding encoding) {
+            if (encoding == Compression.Encoding.IDENTITY) return json;
+            byte[] body = encoded.get(encoding.ordinal());
+            if (body == null) {
+                body = Compression.compress(json, 0, json.length, encoding);
+                encoded.set(encoding.ordinal(), body);
+            }
+            return body;
+        }
+    }
+}
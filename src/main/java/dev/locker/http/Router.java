@@ -1,66 +1,255 @@
 package dev.locker.http;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import dev.locker.metrics.MetricsRegistry;
+import dev.locker.metrics.RouteMetrics;
+import dev.locker.service.ConflictException;
+import dev.locker.service.NotFoundException;
+import dev.locker.service.ValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Helpers that registers contexts and provides simple query parsing utilities.
+ * Dispatches every request of the server through one root context and a path trie.
+ * <p>
+ * Routes are patterns of literal segments and {@code {name}} parameters, e.g.
+ * {@code /devices/{id}}. Each trie node holds a small per-method table of endpoints; a request is
+ * matched segment by segment against the node's literal children first and its parameter child
+ * second, without allocating for literal segments, and the matched {@link Route} is called
+ * directly. Paths that match no route get 404, known paths with another method 405. Every route
+ * records its response statuses and latencies in a {@link MetricsRegistry}, and the service
+ * exceptions and malformed JSON bodies are mapped to their status codes here for all routes.
+ * <p>
+ * Matching works on the raw path, so an escaped {@code /} ({@code %2F}) stays inside its
+ * segment; segments with escapes are decoded before they are compared or bound.
+ * <p>
+ * Routes must be registered before the server is started.
  */
-@SuppressWarnings("ClassCanBeRecord")
 public class Router {
-    private final HttpServer server;
+    private static final Logger logger = LoggerFactory.getLogger(Router.class);
+    private static final String[] NO_VALUES = new String[0];
+
+    private final MetricsRegistry metrics;
+    private final Node root = new Node();
+    private int maxParams;
 
     /**
-     * Constructor for Router.
+     * A route's target: serves one method on one path pattern.
+     */
+    @FunctionalInterface
+    public interface Route {
+        /**
+         * Handle a matched request and send its response.
+         *
+         * @param request the request with its path parameters
+         * @throws IOException if an I/O error occurs
+         */
+        void handle(Request request) throws IOException;
+    }
+
+    /**
+     * Constructor for Router. Route metrics go to a private registry.
      *
-     * @param server the HttpServer to register contexts on
+     * @param server the HttpServer whose root context the router takes over
      */
     public Router(HttpServer server) {
-        this.server = server;
+        this(server, new MetricsRegistry());
     }
 
     /**
-     * Register a GET handler for the given path. The handler will only be invoked
-     * when the incoming request method is GET; otherwise 405 is returned.
+     * Constructor for Router.
      *
-     * @param path    the request path to register (e.g. "/devices")
+     * @param server  the HttpServer whose root context the router takes over
+     * @param metrics the registry to record route metrics in
+     */
+    public Router(HttpServer server, MetricsRegistry metrics) {
+        this.metrics = metrics;
+        server.createContext("/", this::dispatch);
+    }
+
+    /**
+     * Register a GET route.
+     *
+     * @param pattern the path pattern, e.g. "/devices/{id}"
+     * @param route   the target of matching requests
+     */
+    public void get(String pattern, Route route) {
+        add("GET", pattern, route);
+    }
+
+    /**
+     * Register a POST route.
+     *
+     * @param pattern the path pattern, e.g. "/loans/borrow"
+     * @param route   the target of matching requests
+     */
+    public void post(String pattern, Route route) {
+        add("POST", pattern, route);
+    }
+
+    /**
+     * Register a GET handler for the given path. Requests with another method get 405.
+     *
+     * @param path    the request path to register (e.g. "/metrics")
      * @param handler the HttpHandler to handle matching requests
      */
     public void registerGet(String path, HttpHandler handler) {
-        server.createContext(path, exchange -> {
-            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(405, -1);
-                return;
-            }
-            handler.handle(exchange);
-        });
+        get(path, request -> handler.handle(request.exchange()));
     }
 
     /**
-     * Register a POST handler for the given path. The handler will only be invoked
-     * when the incoming request method is POST; otherwise 405 is returned.
+     * Register a POST handler for the given path. Requests with another method get 405.
      *
      * @param path    the request path to register (e.g. "/loans/borrow")
      * @param handler the HttpHandler to handle matching requests
      */
     public void registerPost(String path, HttpHandler handler) {
-        server.createContext(path, exchange -> {
-            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-                exchange.sendResponseHeaders(405, -1);
-                return;
+        post(path, request -> handler.handle(request.exchange()));
+    }
+
+    private synchronized void add(String method, String pattern, Route route) {
+        if (!pattern.startsWith("/")) throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        Node node = root;
+        List<String> params = new ArrayList<>();
+        for (String segment : pattern.substring(1).split("/", -1)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                params.add(segment.substring(1, segment.length() - 1));
+                if (node.param == null) node.param = new Node();
+                node = node.param;
+            } else {
+                node = node.literal(segment);
+            }
+        }
+        if (node.endpoint(method) != null) throw new IllegalArgumentException("Duplicate route " + method + " " + pattern);
+        node.add(method, new Endpoint(route, metrics.route(method, pattern), params.toArray(String[]::new)));
+        maxParams = Math.max(maxParams, params.size());
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String path = exchange.getRequestURI().getRawPath();
+        String[] values = maxParams == 0 ? NO_VALUES : new String[maxParams];
+        Node node = path != null && path.startsWith("/") ? match(root, path, 1, values, 0) : null;
+        if (node == null) {
+            HttpUtil.sendError(exchange, 404, "Not found");
+            return;
+        }
+        Endpoint endpoint = node.endpoint(exchange.getRequestMethod());
+        if (endpoint == null) {
+            // recorded against the path's first route: the method itself is client input
+            exchange.getResponseHeaders().set("Allow", String.join(", ", node.methods));
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            node.endpoints[0].metrics().record(405, System.nanoTime() - start);
+            return;
+        }
+        try {
+            endpoint.route().handle(new Request(exchange, endpoint.paramNames(), values));
+        } catch (ValidationException | NotFoundException | ConflictException e) {
+            HttpUtil.sendError(exchange, statusOf(e), e.getMessage());
+        } catch (JsonProcessingException e) {
+            if (exchange.getResponseCode() != -1) throw e;
+            if (isMalformedInput(e)) {
+                HttpUtil.sendError(exchange, 400, "Malformed JSON");
+            } else {
+                logger.error("Failed to handle {} {}", exchange.getRequestMethod(), path, e);
+                HttpUtil.sendError(exchange, 500, "Internal error");
             }
-            handler.handle(exchange);
-        });
+        } catch (Exception e) {
+            if (exchange.getResponseCode() != -1) throw e;
+            logger.error("Failed to handle {} {}", exchange.getRequestMethod(), path, e);
+            HttpUtil.sendError(exchange, 500, "Internal error");
+        } finally {
+            // -1 means the handler failed before responding; the server then drops the exchange
+            int status = exchange.getResponseCode();
+            endpoint.metrics().record(status < 0 ? 500 : status, System.nanoTime() - start);
+        }
     }
 
     /**
-     * Parse query string into map (first value wins). Null-safe.
+     * Match the path from {@code start}, the beginning of a segment, below {@code node}. Literal
+     * children win over the parameter child; if a literal branch fails deeper down, the parameter
+     * branch is tried.
      *
-     * @param uri    the URI containing the query string
+     * @return the node of the matched route, or null
+     */
+    private static Node match(Node node, String path, int start, String[] values, int params) {
+        int end = path.indexOf('/', start);
+        if (end < 0) end = path.length();
+        int len = end - start;
+        int escape = path.indexOf('%', start);
+        String decoded = escape >= 0 && escape < end ? decodeSegment(path.substring(start, end)) : null;
+        for (int i = 0; i < node.literals.length; i++) {
+            String literal = node.literals[i];
+            if (decoded != null ? literal.equals(decoded) : literal.length() == len && path.regionMatches(start, literal, 0, len)) {
+                Node found = next(node.children[i], path, end, values, params);
+                if (found != null) return found;
+            }
+        }
+        if (node.param != null && len > 0) {
+            values[params] = decoded != null ? decoded : path.substring(start, end);
+            return next(node.param, path, end, values, params + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Percent-decode one raw path segment. Unlike a query, a path keeps '+' as it is.
+     */
+    private static String decodeSegment(String raw) {
+        return decode(raw.replace("+", "%2B"));
+    }
+
+    private static Node next(Node child, String path, int end, String[] values, int params) {
+        if (end == path.length()) return child.endpoints.length == 0 ? null : child;
+        return match(child, path, end + 1, values, params);
+    }
+
+    /**
+     * Tell request bodies that are not JSON or do not fit the expected shape (parse errors,
+     * missing or mistyped fields, values the constructor rejects) from failures to write a
+     * response or to map a type at all, which are server errors.
+     *
+     * @param e a Jackson exception thrown by a route
+     * @return whether the exception was caused by the request body
+     */
+    static boolean isMalformedInput(JsonProcessingException e) {
+        return !(e instanceof InvalidDefinitionException) && !(e.getProcessor() instanceof JsonGenerator);
+    }
+
+    /**
+     * Return the HTTP status for one of the service exceptions.
+     *
+     * @param e the exception thrown by a service
+     * @return 400, 404 or 409; 500 for anything else
+     */
+    static int statusOf(RuntimeException e) {
+        if (e instanceof ValidationException) return 400;
+        if (e instanceof NotFoundException) return 404;
+        if (e instanceof ConflictException) return 409;
+        return 500;
+    }
+
+    /**
+     * Parse query string into map (first value wins). Names and values are percent-decoded,
+     * with '+' as space. Null-safe.
+     *
+     * @param uri the URI containing the query string
      * @return map of query parameter names to values
      */
     public static Map<String, String> parseQuery(URI uri) {
@@ -82,6 +271,50 @@ public class Router {
     }
 
     private static String decode(String s) {
-        return s.replace("+", " ");
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            // malformed escape: keep it literally
+            return s.replace('+', ' ');
+        }
+    }
+
+    private record Endpoint(Route route, RouteMetrics metrics, String[] paramNames) {
+    }
+
+    /**
+     * A trie node: literal children in parallel arrays, at most one parameter child, and the
+     * endpoints of the path ending here by method.
+     */
+    private static final class Node {
+        String[] literals = new String[0];
+        Node[] children = new Node[0];
+        Node param;
+        String[] methods = new String[0];
+        Endpoint[] endpoints = new Endpoint[0];
+
+        Node literal(String segment) {
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(segment)) return children[i];
+            }
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            literals[literals.length - 1] = segment;
+            return children[children.length - 1] = new Node();
+        }
+
+        Endpoint endpoint(String method) {
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i].equalsIgnoreCase(method)) return endpoints[i];
+            }
+            return null;
+        }
+
+        void add(String method, Endpoint endpoint) {
+            methods = Arrays.copyOf(methods, methods.length + 1);
+            endpoints = Arrays.copyOf(endpoints, endpoints.length + 1);
+            methods[methods.length - 1] = method;
+            endpoints[endpoints.length - 1] = endpoint;
+        }
     }
 }
@@ -1,20 +1,20 @@
 package dev.locker.http;
 
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import dev.locker.service.StatsService;
+import dev.locker.util.DateUtil;
 
 import java.io.IOException;
-import java.net.URI;
-import java.util.List;
-import java.util.Map;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 /**
- * Handler for stats endpoints (popular). Overdue intentionally omitted here.
+ * HTTP endpoints for statistics. Each public method serves one route registered with the
+ * {@link Router}; the windowed statistics take the window length in {@code days} (default 30).
  */
-@SuppressWarnings("ClassCanBeRecord")
-public class StatsHandler implements HttpHandler {
+public class StatsHandler {
+    private static final int DEFAULT_DAYS = 30;
     private final StatsService statsService;
+    private final ResponseCache cache = new ResponseCache();
 
     /**
      * Create a new StatsHandler that serves stats endpoints.
@@ -26,23 +26,76 @@ public class StatsHandler implements HttpHandler {
     }
 
     /**
-     * Handle an incoming HTTP request for stats endpoints.
+     * {@code GET /stats/popular}: the {@code limit} (default 5) most borrowed devices of the
+     * last 30 days.
      *
-     * @param exchange the HTTP exchange representing request and response
-     * @throws IOException on I/O errors while reading/writing the exchange
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
      */
-    @Override
-    public void handle(HttpExchange exchange) throws IOException {
-        URI requestURI = exchange.getRequestURI();
-        Map<String, String> q = Router.parseQuery(requestURI);
-        int limit = 5;
-        if (q.containsKey("limit")) {
-            try {
-                limit = Integer.parseInt(q.get("limit"));
-            } catch (NumberFormatException ignored) {
-            }
-        }
-        List<?> res = statsService.popularSince(null, limit);
-        HttpUtil.sendJson(exchange, 200, res);
+    public void popular(Request request) throws IOException {
+        // the 30-day window moves in whole minutes, so the data version and the window start
+        // determine the response and make a strong ETag
+        Instant since = DateUtil.plusDays(DateUtil.nowUTC(), -StatsService.POPULAR_DAYS).truncatedTo(ChronoUnit.MINUTES);
+        int limit = request.intQuery("limit", 5);
+        String etag = ResponseCache.etag("p", statsService.popularVersion(), since.getEpochSecond() / 60);
+        cache.sendJson(request.exchange(), etag, () -> statsService.popularSince(since, limit));
+    }
+
+    /**
+     * {@code GET /stats/overdue}: open loans overdue by more than {@code olderThan} days,
+     * optionally of one {@code userId}, at most {@code limit} (default 50).
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void overdue(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, statsService.overdue(request.intQuery("olderThan", 0),
+                request.query("userId"), request.intQuery("limit", 50)));
+    }
+
+    /**
+     * {@code GET /stats/utilization}: the {@code limit} (default 20) most used devices.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void utilization(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, statsService.utilization(days(request), request.intQuery("limit", 20)));
+    }
+
+    /**
+     * {@code GET /stats/durations}: count and average duration of returned loans.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void durations(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, statsService.durations(days(request)));
+    }
+
+    /**
+     * {@code GET /stats/on-time}: on-time return rates per user, optionally of one
+     * {@code userId}, at most {@code limit} (default 50).
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void onTime(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, statsService.onTimeRates(days(request), request.query("userId"),
+                request.intQuery("limit", 50)));
+    }
+
+    /**
+     * {@code GET /stats/hourly}: borrows by UTC hour of day.
+     *
+     * @param request the matched request
+     * @throws IOException if an I/O error occurs
+     */
+    public void hourly(Request request) throws IOException {
+        HttpUtil.sendJson(request.exchange(), 200, statsService.hourly(days(request)));
+    }
+
+    private static int days(Request request) {
+        return request.intQuery("days", DEFAULT_DAYS);
     }
 }
@@ -0,0 +1,66 @@
+package dev.locker.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed bucket bounds, exposed as a Prometheus histogram.
+ * <p>
+ * Recording looks up the bucket with a short scan over a constant array and increments one slot
+ * of an {@link AtomicLongArray}, so it neither locks nor allocates. Buckets hold plain counts;
+ * they are made cumulative only when the histogram is read.
+ */
+public final class LatencyHistogram {
+    /** Upper bucket bounds in seconds, as used in the {@code le} label; the last bucket is +Inf. */
+    static final double[] BOUNDS_SECONDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = Math.round(BOUNDS_SECONDS[i] * 1e9);
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Record one observation.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && v > BOUNDS_NANOS[i]) i++;
+        buckets.incrementAndGet(i);
+        sumNanos.add(v);
+    }
+
+    /**
+     * Return the cumulative bucket counts: element {@code i} counts the observations up to
+     * {@code BOUNDS_SECONDS[i]}, the last element counts all observations.
+     *
+     * @return a fresh array of {@code BOUNDS_SECONDS.length + 1} counts
+     */
+    long[] cumulativeCounts() {
+        long[] result = new long[buckets.length()];
+        long running = 0;
+        for (int i = 0; i < result.length; i++) {
+            running += buckets.get(i);
+            result[i] = running;
+        }
+        return result;
+    }
+
+    /**
+     * Return the sum of all recorded latencies. Read independently of the buckets, so it may
+     * include observations that a concurrent {@link #cumulativeCounts()} missed.
+     *
+     * @return the sum in seconds
+     */
+    double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+}
@@ -0,0 +1,191 @@
+package dev.locker.metrics;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Application metrics: per-route request counters and latency histograms, plus gauges and
+ * counters whose values are read from the application when scraped.
+ * <p>
+ * Route metrics are recorded on the request path and are lock- and allocation-free; everything
+ * else, including formatting, happens only in {@link #scrape()}, which renders the Prometheus
+ * text exposition format (version 0.0.4).
+ */
+public final class MetricsRegistry {
+    /** Content type of {@link #scrape()} output. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] LE = new String[LatencyHistogram.BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < LE.length; i++) {
+            LE[i] = BigDecimal.valueOf(LatencyHistogram.BOUNDS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final List<RouteMetrics> routes = new CopyOnWriteArrayList<>();
+    private final List<Sample> samples = new CopyOnWriteArrayList<>();
+
+    /**
+     * Return the metrics of a route, creating them on first use.
+     *
+     * @param method the HTTP method
+     * @param path   the registered path
+     * @return the route metrics
+     */
+    public synchronized RouteMetrics route(String method, String path) {
+        for (RouteMetrics r : routes) {
+            if (r.method().equals(method) && r.path().equals(path)) return r;
+        }
+        RouteMetrics r = new RouteMetrics(method, path);
+        routes.add(r);
+        return r;
+    }
+
+    /**
+     * Register a gauge, a value that can go up and down.
+     *
+     * @param name  the metric name
+     * @param help  one line describing the metric
+     * @param value supplies the current value when scraped
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        samples.add(new Sample("gauge", name, help, "", value));
+    }
+
+    /**
+     * Register one labelled series of a gauge. Series of the same name share its help text.
+     *
+     * @param name       the metric name
+     * @param help       one line describing the metric
+     * @param labelName  the label name
+     * @param labelValue the label value of this series
+     * @param value      supplies the current value when scraped
+     */
+    public void gauge(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        samples.add(new Sample("gauge", name, help, labels(labelName, labelValue), value));
+    }
+
+    /**
+     * Register a counter, a value that only goes up, maintained elsewhere.
+     *
+     * @param name  the metric name, by convention ending in {@code _total}
+     * @param help  one line describing the metric
+     * @param value supplies the current value when scraped
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        samples.add(new Sample("counter", name, help, "", value));
+    }
+
+    /**
+     * Register one labelled series of a counter, a value that only goes up, maintained elsewhere.
+     *
+     * @param name       the metric name, by convention ending in {@code _total}
+     * @param help       one line describing the metric
+     * @param labelName  the label name
+     * @param labelValue the label value of this series
+     * @param value      supplies the current value when scraped
+     */
+    public void counter(String name, String help, String labelName, String labelValue, DoubleSupplier value) {
+        samples.add(new Sample("counter", name, help, labels(labelName, labelValue), value));
+    }
+
+    /**
+     * Render all metrics in the Prometheus text format.
+     *
+     * @return the exposition text
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        writeRoutes(out);
+        Map<String, List<Sample>> families = new LinkedHashMap<>();
+        for (Sample s : samples) {
+            families.computeIfAbsent(s.name, k -> new ArrayList<>()).add(s);
+        }
+        for (List<Sample> family : families.values()) {
+            Sample first = family.get(0);
+            header(out, first.name, first.type, first.help);
+            for (Sample s : family) {
+                out.append(s.name).append(s.labels).append(' ');
+                number(out, s.value.getAsDouble());
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private void writeRoutes(StringBuilder out) {
+        if (routes.isEmpty()) return;
+        header(out, "http_requests_total", "counter", "HTTP requests handled, by registered route and method and by response status.");
+        for (RouteMetrics r : routes) {
+            AtomicLongArray statuses = r.statuses();
+            for (int status = 0; status < statuses.length(); status++) {
+                long n = statuses.get(status);
+                if (n == 0) continue;
+                out.append("http_requests_total{method=\"").append(r.method()).append("\",route=\"");
+                escape(out, r.path());
+                out.append("\",status=\"").append(status).append("\"} ").append(n).append('\n');
+            }
+        }
+        header(out, "http_request_duration_seconds", "histogram", "Time spent handling HTTP requests, by registered route and method.");
+        for (RouteMetrics r : routes) {
+            long[] counts = r.latency().cumulativeCounts();
+            StringBuilder labels = new StringBuilder("method=\"").append(r.method()).append("\",route=\"");
+            escape(labels, r.path());
+            labels.append('"');
+            for (int i = 0; i < counts.length; i++) {
+                out.append("http_request_duration_seconds_bucket{").append(labels).append(",le=\"");
+                out.append(i < LE.length ? LE[i] : "+Inf").append("\"} ").append(counts[i]).append('\n');
+            }
+            out.append("http_request_duration_seconds_sum{").append(labels).append("} ");
+            number(out, r.latency().sumSeconds());
+            out.append('\n');
+            out.append("http_request_duration_seconds_count{").append(labels).append("} ")
+                    .append(counts[counts.length - 1]).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String labels(String name, String value) {
+        StringBuilder sb = new StringBuilder("{").append(name).append("=\"");
+        escape(sb, value);
+        return sb.append("\"}").toString();
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static void number(StringBuilder out, double v) {
+        if (Double.isNaN(v)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(v)) {
+            out.append(v > 0 ? "+Inf" : "-Inf");
+        } else if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            out.append((long) v);
+        } else {
+            out.append(v);
+        }
+    }
+
+    private record Sample(String type, String name, String help, String labels, DoubleSupplier value) {
+    }
+}
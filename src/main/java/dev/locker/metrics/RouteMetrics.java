@@ -0,0 +1,60 @@
+package dev.locker.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counts per status code and the latency histogram of one route and method.
+ * <p>
+ * Obtained once per route from {@link MetricsRegistry#route(String, String)} when the route is
+ * registered, so recording a request is a map-free, allocation-free pair of atomic increments.
+ */
+public final class RouteMetrics {
+    private static final int MAX_STATUS = 599;
+
+    private final String method;
+    private final String path;
+    private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS + 1);
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    RouteMetrics(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    /**
+     * Record one handled request.
+     *
+     * @param status the response status; values outside 100-599 are counted as 0
+     * @param nanos  the time spent handling the request
+     */
+    public void record(int status, long nanos) {
+        statuses.incrementAndGet(status >= 100 && status <= MAX_STATUS ? status : 0);
+        latency.record(nanos);
+    }
+
+    /**
+     * Return the number of requests answered with the given status.
+     *
+     * @param status the status code
+     * @return the request count
+     */
+    public long count(int status) {
+        return status >= 0 && status <= MAX_STATUS ? statuses.get(status) : 0;
+    }
+
+    String method() {
+        return method;
+    }
+
+    String path() {
+        return path;
+    }
+
+    AtomicLongArray statuses() {
+        return statuses;
+    }
+
+    LatencyHistogram latency() {
+        return latency;
+    }
+}
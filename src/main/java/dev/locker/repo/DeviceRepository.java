@@ -4,6 +4,7 @@ import dev.locker.domain.Device;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Repository for devices.
@@ -16,6 +17,32 @@ public interface DeviceRepository {
      */
     List<Device> findAll();
 
+    /**
+     * Return the number of devices without copying them.
+     *
+     * @return the device count
+     */
+    default int count() {
+        return findAll().size();
+    }
+
+    /**
+     * Return up to {@code limit} devices with an id greater than {@code afterId}, in id order.
+     *
+     * @param afterId the exclusive lower bound; null to start with the first device
+     * @param limit   maximum number of devices to return
+     * @return an unmodifiable list of devices sorted by id
+     */
+    List<Device> findPage(String afterId, int limit);
+
+    /**
+     * Iterate over all devices in id order without copying them. The iteration is weakly
+     * consistent: it never fails because of concurrent saves and may or may not reflect them.
+     *
+     * @return the devices sorted by id
+     */
+    Iterable<Device> iterateAll();
+
     /**
      * Find a device by id.
      *
@@ -30,4 +57,31 @@ public interface DeviceRepository {
      * @param device the device to save
      */
     void save(Device device);
+
+    /**
+     * Save several devices with a single durability round; equivalent to saving them one by one.
+     *
+     * @param devices the devices to save, in order
+     */
+    default void saveAll(List<Device> devices) {
+        for (Device device : devices) {
+            save(device);
+        }
+    }
+
+    /**
+     * Return the modification version: a counter increased by every save, after the saved
+     * device became visible and the save listeners ran. Equal versions mean equal contents.
+     *
+     * @return the current version
+     */
+    long version();
+
+    /**
+     * Register a listener called with every saved device, right after it became visible through
+     * {@link #findById(String)}. Listeners must be fast and must not save devices themselves.
+     *
+     * @param listener the listener to add
+     */
+    void addSaveListener(Consumer<Device> listener);
 }
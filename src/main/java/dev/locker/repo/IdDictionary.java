@@ -0,0 +1,73 @@
+package dev.locker.repo;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns string identifiers (device and user ids) as dense ints starting at 0.
+ * <p>
+ * Lookups in both directions are lock-free; assigning a new code is serialized. Codes are never
+ * reassigned, so they can be stored in place of the strings.
+ */
+public final class IdDictionary {
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[16];
+    private volatile int size;
+
+    /**
+     * Return the code of the given id, assigning the next free code if it is new.
+     *
+     * @param id the identifier to intern
+     * @return the code of the identifier
+     */
+    public int intern(String id) {
+        Integer code = codes.get(id);
+        if (code != null) return code;
+        synchronized (this) {
+            code = codes.get(id);
+            if (code != null) return code;
+            int next = size;
+            String[] arr = ids;
+            if (next == arr.length) {
+                arr = Arrays.copyOf(arr, next * 2);
+                ids = arr;
+            }
+            arr[next] = id;
+            size = next + 1;
+            codes.put(id, next);
+            return next;
+        }
+    }
+
+    /**
+     * Return the code of the given id without interning it.
+     *
+     * @param id the identifier to look up
+     * @return the code, or -1 if the id was never interned
+     */
+    public int codeOf(String id) {
+        Integer code = codes.get(id);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Return the id with the given code.
+     *
+     * @param code a code returned by {@link #intern(String)}
+     * @return the identifier
+     */
+    public String idOf(int code) {
+        if (code < 0 || code >= size) throw new IndexOutOfBoundsException(code);
+        return ids[code];
+    }
+
+    /**
+     * Return the number of interned ids; codes are {@code 0..size()-1}.
+     *
+     * @return the number of interned ids
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,50 @@
+package dev.locker.repo;
+
+/**
+ * Read-only columnar view of a loan store for analytical scans.
+ * <p>
+ * Rows are numbered in insertion order from 0 and hold device and user codes of one shared
+ * {@link IdDictionary} plus borrowedAt, dueAt and returnedAt as epoch nanoseconds, with
+ * {@link #NOT_RETURNED} for open loans. Rows below {@link #size()} are never removed; their
+ * user, dueAt and returnedAt may change when a loan is updated in place, and a scan overlapping
+ * such an update may see either value of each of those columns.
+ */
+public interface LoanColumns {
+    /**
+     * returnedAt of an open loan.
+     */
+    long NOT_RETURNED = Long.MIN_VALUE;
+
+    /**
+     * Return the number of rows.
+     *
+     * @return the row count
+     */
+    int size();
+
+    /**
+     * Return the dictionary the device and user codes belong to. Callers must not intern ids.
+     *
+     * @return the id dictionary
+     */
+    IdDictionary ids();
+
+    /**
+     * Pass the rows {@code [from, to)} to the block, in order and in one or more runs of
+     * consecutive rows.
+     *
+     * @param from  the first row, inclusive
+     * @param to    the last row, exclusive; at most {@link #size()}
+     * @param block receives the columns of each run
+     */
+    void read(int from, int to, Block block);
+
+    /**
+     * Receives a run of rows as columns. Row {@code i} of the run is at index {@code start + i}
+     * of every array; the arrays may be the store's own and must not be modified or retained.
+     */
+    @FunctionalInterface
+    interface Block {
+        void accept(int[] device, int[] user, long[] borrowedAt, long[] dueAt, long[] returnedAt, int start, int end);
+    }
+}
@@ -2,6 +2,7 @@ package dev.locker.repo;
 
 import dev.locker.domain.Loan;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,12 +11,22 @@ import java.util.Optional;
  */
 public interface LoanRepository {
     /**
-     * Return all loans (historic and open).
+     * Return all loans (historic and open) as a consistent snapshot: loans saved after the call
+     * are not part of it and loans updated afterwards keep the state they had at the call. The
+     * list may be a view over the store rather than a copy.
      *
      * @return an unmodifiable list of loans
      */
     List<Loan> findAll();
 
+    /**
+     * Return the loans as read-only columns for analytical scans. The view is live: rows
+     * appended later are covered by its size.
+     *
+     * @return the columnar view of all loans
+     */
+    LoanColumns columns();
+
     /**
      * Find an open (not returned) loan for the given device.
      *
@@ -24,6 +35,38 @@ public interface LoanRepository {
      */
     Optional<Loan> findOpenLoanByDevice(String deviceId);
 
+    /**
+     * Return all open (not returned) loans, at most one per device, in no particular order.
+     *
+     * @return an unmodifiable list of the open loans
+     */
+    List<Loan> findOpenLoans();
+
+    /**
+     * Return all loans (historic and open) of the given user, in insertion order.
+     *
+     * @param userId the user id to search for
+     * @return an unmodifiable list of the user's loans
+     */
+    List<Loan> findByUser(String userId);
+
+    /**
+     * Find a loan by its identity (device id and borrow timestamp).
+     *
+     * @param deviceId   the device id of the loan
+     * @param borrowedAt the timestamp the device was borrowed at
+     * @return an Optional with the loan if present
+     */
+    Optional<Loan> findByDeviceAndBorrowedAt(String deviceId, Instant borrowedAt);
+
+    /**
+     * Return the modification version: a counter increased by every save and update, after the
+     * written loan became visible. Equal versions mean equal contents.
+     *
+     * @return the current version
+     */
+    long version();
+
     /**
      * Persist a new loan.
      *
@@ -37,4 +80,28 @@ public interface LoanRepository {
      * @param loan the loan to update
      */
     void update(Loan loan);
+
+    /**
+     * Persist several new loans with a single durability round; equivalent to saving them one
+     * by one.
+     *
+     * @param loans the loans to save, in order
+     */
+    default void saveAll(List<Loan> loans) {
+        for (Loan loan : loans) {
+            save(loan);
+        }
+    }
+
+    /**
+     * Update several existing loan records with a single durability round; equivalent to
+     * updating them one by one.
+     *
+     * @param loans the loans to update, in order
+     */
+    default void updateAll(List<Loan> loans) {
+        for (Loan loan : loans) {
+            update(loan);
+        }
+    }
 }
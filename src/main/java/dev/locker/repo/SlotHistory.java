@@ -0,0 +1,150 @@
+package dev.locker.repo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the values that in-place updates of a slot-addressed loan store replace, for as long as
+ * a snapshot taken before the update can still read them.
+ * <p>
+ * The store calls {@link #snapshot()} to take a snapshot and {@link #replacing} before every
+ * in-place update, both under its write lock; every update is numbered. Replaced values are
+ * recorded only while some snapshot is reachable, so a store without snapshots pays one check
+ * per update. Snapshots are tracked through weak references: once a snapshot is no longer
+ * referenced, the values kept only for it are dropped by the next write.
+ * <p>
+ * A reader of a snapshot reads the current user, dueAt and returnedAt of a slot first and then
+ * asks {@link #before} whether the snapshot must see older values instead. Lookups are
+ * lock-free.
+ */
+public final class SlotHistory {
+    private final Map<Integer, Entry> replaced = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Snapshot> released = new ReferenceQueue<>();
+    // live snapshots and the update number they were taken at; guarded by the store's write lock
+    private final Map<Reference<Snapshot>, Long> live = new HashMap<>();
+    private long updates;
+
+    /**
+     * Take a snapshot covering every update made so far. Callers must serialize this with writes.
+     *
+     * @return the snapshot, to be kept by the view reading it
+     */
+    public Snapshot snapshot() {
+        expunge();
+        Snapshot snapshot = new Snapshot(updates);
+        live.put(new WeakReference<>(snapshot, released), updates);
+        return snapshot;
+    }
+
+    /**
+     * Record the values of a slot that an in-place update is about to replace. Callers must
+     * serialize writes and call this before changing the slot.
+     *
+     * @param slot       the slot being updated
+     * @param user       its current user code
+     * @param dueAt      its current dueAt in epoch nanoseconds
+     * @param returnedAt its current returnedAt in epoch nanoseconds
+     */
+    public void replacing(int slot, int user, long dueAt, long returnedAt) {
+        expunge();
+        long update = ++updates;
+        if (live.isEmpty()) return;
+        replaced.compute(slot, (k, newer) -> new Entry(update, user, dueAt, returnedAt, newer));
+    }
+
+    /**
+     * Return the values the snapshot sees for a slot if an update made after the snapshot
+     * replaced them. Call it after reading the slot's current values.
+     *
+     * @param snapshot the snapshot being read
+     * @param slot     the slot
+     * @return the values as of the snapshot, or null if the current values are the snapshot's
+     */
+    public Entry before(Snapshot snapshot, int slot) {
+        Entry visible = null;
+        for (Entry e = replaced.get(slot); e != null && e.update > snapshot.update; e = e.older) {
+            visible = e;
+        }
+        return visible;
+    }
+
+    /**
+     * Forget released snapshots and every replaced value no live snapshot can see.
+     */
+    private void expunge() {
+        boolean changed = false;
+        for (Reference<? extends Snapshot> ref; (ref = released.poll()) != null; ) {
+            changed |= live.remove(ref) != null;
+        }
+        if (!changed) return;
+        if (live.isEmpty()) {
+            replaced.clear();
+            return;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (long update : live.values()) {
+            oldest = Math.min(oldest, update);
+        }
+        long seen = oldest;
+        for (Integer slot : replaced.keySet()) {
+            replaced.computeIfPresent(slot, (k, e) -> e.newerThan(seen));
+        }
+    }
+
+    /**
+     * A point in the sequence of updates; a snapshot sees every update made before it.
+     */
+    public static final class Snapshot {
+        private final long update;
+
+        private Snapshot(long update) {
+            this.update = update;
+        }
+    }
+
+    /**
+     * The user, dueAt and returnedAt of a slot before an update, linked to the values replaced by
+     * earlier updates of the same slot.
+     */
+    public static final class Entry {
+        private final long update;
+        private final int user;
+        private final long dueAt;
+        private final long returnedAt;
+        private final Entry older;
+
+        private Entry(long update, int user, long dueAt, long returnedAt, Entry older) {
+            this.update = update;
+            this.user = user;
+            this.dueAt = dueAt;
+            this.returnedAt = returnedAt;
+            this.older = older;
+        }
+
+        public int user() {
+            return user;
+        }
+
+        public long dueAt() {
+            return dueAt;
+        }
+
+        public long returnedAt() {
+            return returnedAt;
+        }
+
+        /**
+         * Return this chain without the entries replaced by updates up to {@code update}, or null
+         * if nothing is left. The chain is ordered newest first, so what is kept is a prefix.
+         */
+        private Entry newerThan(long update) {
+            if (this.update <= update) return null;
+            Entry rest = older == null ? null : older.newerThan(update);
+            return rest == older ? this : new Entry(this.update, user, dueAt, returnedAt, rest);
+        }
+    }
+}
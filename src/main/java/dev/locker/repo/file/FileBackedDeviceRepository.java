@@ -1,6 +1,5 @@
 package dev.locker.repo.file;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import dev.locker.domain.Device;
 import dev.locker.repo.DeviceRepository;
 import dev.locker.util.JsonUtil;
@@ -8,21 +7,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * File-backed device repository.
+ * File-backed device repository. Devices are kept sorted by id, so pages and full listings
+ * can be served straight from the map.
+ * <p>
+ * When a {@link Journal} is attached, every save is appended to it and acknowledged only once
+ * durable. {@link #compact()} folds the journal back into the backing file.
  */
-public class FileBackedDeviceRepository implements DeviceRepository {
+public class FileBackedDeviceRepository implements DeviceRepository, Snapshottable {
     private static final Logger logger = LoggerFactory.getLogger(FileBackedDeviceRepository.class);
     private final Path file;
-    private final Map<String, Device> map = new ConcurrentHashMap<>();
+    private final Object persistLock = new Object();
+    private final NavigableMap<String, Device> map = new ConcurrentSkipListMap<>();
+    private final Journal journal;
+    private final AtomicLong dirty = new AtomicLong();
+    private final AtomicLong modifications = new AtomicLong();
+    private final List<Consumer<Device>> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Create a new FileBackedDeviceRepository with the given backing file.
@@ -30,15 +42,33 @@ public class FileBackedDeviceRepository implements DeviceRepository {
      * @param file the file to back the repository
      */
     public FileBackedDeviceRepository(Path file) {
+        this(file, null);
+    }
+
+    /**
+     * Create a new FileBackedDeviceRepository with the given backing file and write-ahead
+     * journal. The journal is replayed on top of the file contents.
+     *
+     * @param file    the file to back the repository
+     * @param journal the journal receiving every write; may be null
+     * @throws UncheckedIOException if the file or the journal cannot be read completely
+     */
+    public FileBackedDeviceRepository(Path file, Journal journal) {
         this.file = file;
+        this.journal = journal;
         try {
             if (Files.exists(file)) {
-                List<Device> list = JsonUtil.mapper().readValue(Files.readAllBytes(file), new TypeReference<>() {
-                });
-                map.putAll(list.stream().collect(Collectors.toMap(Device::id, d -> d)));
+                JsonUtil.readArray(file, Device.class, d -> map.put(d.id(), d));
+            }
+            if (journal != null) {
+                int replayed = journal.replay(Device.class, d -> map.put(d.id(), d));
+                dirty.set(replayed);
+                logger.info("Replayed {} journaled device records", replayed);
             }
         } catch (IOException e) {
-            logger.error("Failed to load devices from {}", file, e);
+            // a partial load must never be compacted: that would replace the snapshot and
+            // discard the journal holding the rest of the data
+            throw new UncheckedIOException("Failed to load devices from " + file, e);
         }
     }
 
@@ -47,6 +77,27 @@ public class FileBackedDeviceRepository implements DeviceRepository {
         return List.copyOf(map.values());
     }
 
+    @Override
+    public int count() {
+        return map.size();
+    }
+
+    @Override
+    public List<Device> findPage(String afterId, int limit) {
+        if (limit <= 0) return List.of();
+        List<Device> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Device d : (afterId == null ? map : map.tailMap(afterId, false)).values()) {
+            page.add(d);
+            if (page.size() == limit) break;
+        }
+        return List.copyOf(page);
+    }
+
+    @Override
+    public Iterable<Device> iterateAll() {
+        return map.values();
+    }
+
     @Override
     public Optional<Device> findById(String id) {
         return Optional.ofNullable(map.get(id));
@@ -54,18 +105,95 @@ public class FileBackedDeviceRepository implements DeviceRepository {
 
     @Override
     public void save(Device device) {
-        map.put(device.id(), device);
+        dirty.incrementAndGet();
+        if (journal == null) {
+            map.put(device.id(), device);
+            notifyListeners(device);
+            modifications.incrementAndGet();
+            return;
+        }
+        long seq;
+        synchronized (map) {
+            map.put(device.id(), device);
+            notifyListeners(device);
+            modifications.incrementAndGet();
+            seq = journal.write(device);
+        }
+        journal.sync(seq);
+    }
+
+    @Override
+    public void saveAll(List<Device> devices) {
+        if (devices.isEmpty()) return;
+        dirty.addAndGet(devices.size());
+        long seq = 0;
+        synchronized (map) {
+            for (Device device : devices) {
+                map.put(device.id(), device);
+                notifyListeners(device);
+                modifications.incrementAndGet();
+                if (journal != null) seq = journal.write(device);
+            }
+        }
+        if (journal != null) journal.sync(seq);
+    }
+
+    @Override
+    public long version() {
+        return modifications.get();
+    }
+
+    @Override
+    public void addSaveListener(Consumer<Device> listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(Device device) {
+        for (Consumer<Device> l : listeners) l.accept(device);
     }
 
     /**
-     * Persist current repository contents to the backing file. This method is synchronized
-     * to avoid concurrent writes.
+     * Persist current repository contents to the backing file. Concurrent calls are serialized;
+     * writes to the repository are not blocked.
      *
+     * @return the number of bytes written
      * @throws IOException if writing to disk fails
      */
-    public synchronized void persist() throws IOException {
-        List<Device> list = findAll();
-        Files.createDirectories(file.getParent());
-        Files.writeString(file, JsonUtil.pretty(list));
+    public long persist() throws IOException {
+        synchronized (persistLock) {
+            return SnapshotWriter.write(file, map.values());
+        }
+    }
+
+    /**
+     * Fold the journal into the backing file: seal the current journal segment, persist a
+     * snapshot and delete the sealed segments.
+     *
+     * @return the number of bytes written
+     * @throws IOException if writing the snapshot or deleting segments fails
+     */
+    @Override
+    public long compact() throws IOException {
+        long pending = dirty.getAndSet(0);
+        try {
+            if (journal == null) return persist();
+            List<Path> sealed = journal.roll();
+            long bytes = persist();
+            journal.discard(sealed);
+            return bytes;
+        } catch (IOException e) {
+            dirty.addAndGet(pending);
+            throw e;
+        }
+    }
+
+    @Override
+    public String snapshotName() {
+        return "devices";
+    }
+
+    @Override
+    public long dirtyCount() {
+        return dirty.get();
     }
 }
@@ -1,26 +1,49 @@
 package dev.locker.repo.file;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import dev.locker.domain.Loan;
+import dev.locker.repo.IdDictionary;
+import dev.locker.repo.LoanColumns;
 import dev.locker.repo.LoanRepository;
 import dev.locker.util.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * File-backed loan repository.
+ * <p>
+ * Loans are stored in a segmented, columnar {@link LoanLog} and addressed by stable slot numbers,
+ * so appends and in-place updates never copy the history and a loan costs a few dozen bytes of
+ * primitive arrays instead of half a dozen objects. Besides the log the repository keeps two
+ * indexes holding slots, open loans by device and loans by user; the log itself finds loans by
+ * identity (deviceId + borrowedAt). Lookups do not depend on the size of the loan history.
+ * Writes are serialized so that the log and the indexes always change together; reads are
+ * lock-free.
+ * <p>
+ * When a {@link Journal} is attached, every save/update is appended to it and acknowledged
+ * only once durable. {@link #compact()} folds the journal back into the backing file.
  */
-public class FileBackedLoanRepository implements LoanRepository {
+public class FileBackedLoanRepository implements LoanRepository, Snapshottable {
     private static final Logger logger = LoggerFactory.getLogger(FileBackedLoanRepository.class);
     private final Path file;
-    private final List<Loan> loans = new CopyOnWriteArrayList<>();
+    private final Object persistLock = new Object();
+    private final LoanLog loans = new LoanLog(new IdDictionary());
+    private final Map<String, Integer> openByDevice = new ConcurrentHashMap<>();
+    private final Map<String, LoanLog.Slots> byUser = new ConcurrentHashMap<>();
+    private final Journal journal;
+    private final AtomicLong dirty = new AtomicLong();
+    private final AtomicLong modifications = new AtomicLong();
 
     /**
      * Create a new FileBackedLoanRepository with the given backing file.
@@ -28,53 +51,225 @@ public class FileBackedLoanRepository implements LoanRepository {
      * @param file the file to back the repository
      */
     public FileBackedLoanRepository(Path file) {
+        this(file, null);
+    }
+
+    /**
+     * Create a new FileBackedLoanRepository with the given backing file and write-ahead journal.
+     * The journal is replayed on top of the file contents.
+     *
+     * @param file    the file to back the repository
+     * @param journal the journal receiving every write; may be null
+     * @throws UncheckedIOException if the file or the journal cannot be read completely
+     */
+    public FileBackedLoanRepository(Path file, Journal journal) {
         this.file = file;
+        this.journal = journal;
         try {
             if (Files.exists(file)) {
-                List<Loan> list = JsonUtil.mapper().readValue(Files.readAllBytes(file), new TypeReference<>() {
-                });
-                loans.addAll(list);
+                JsonUtil.readArray(file, Loan.class, loan -> index(loan, loans.append(loan)));
+            }
+            if (journal != null) {
+                int replayed = journal.replay(Loan.class, this::apply);
+                dirty.set(replayed);
+                logger.info("Replayed {} journaled loan records", replayed);
             }
         } catch (IOException e) {
-            logger.error("Failed to load loans from {}", file, e);
+            // a partial load must never be compacted: that would replace the snapshot and
+            // discard the journal holding the rest of the data
+            throw new UncheckedIOException("Failed to load loans from " + file, e);
         }
     }
 
+    /**
+     * Return a snapshot of all loans without copying them. See {@link LoanLog#snapshot()}.
+     */
     @Override
-    public List<Loan> findAll() {
-        return List.copyOf(loans);
+    public synchronized List<Loan> findAll() {
+        return loans.snapshot();
     }
 
     @Override
     public Optional<Loan> findOpenLoanByDevice(String deviceId) {
-        return loans.stream().filter(l -> l.deviceId().equals(deviceId) && l.returnedAt() == null).findFirst();
+        return lookup(openByDevice.get(deviceId));
+    }
+
+    @Override
+    public List<Loan> findOpenLoans() {
+        List<Loan> result = new ArrayList<>(openByDevice.size());
+        for (int slot : openByDevice.values()) {
+            result.add(loans.get(slot));
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public List<Loan> findByUser(String userId) {
+        LoanLog.Slots slots = byUser.get(userId);
+        if (slots == null) return List.of();
+        int[] positions = slots.toArray();
+        List<Loan> result = new ArrayList<>(positions.length);
+        for (int pos : positions) {
+            result.add(loans.get(pos));
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public Optional<Loan> findByDeviceAndBorrowedAt(String deviceId, Instant borrowedAt) {
+        return lookup(slotOf(deviceId, borrowedAt));
+    }
+
+    @Override
+    public LoanColumns columns() {
+        return loans;
+    }
+
+    @Override
+    public long version() {
+        return modifications.get();
     }
 
     @Override
     public void save(Loan loan) {
-        loans.add(loan);
+        long seq;
+        synchronized (this) {
+            index(loan, loans.append(loan));
+            modifications.incrementAndGet();
+            dirty.incrementAndGet();
+            seq = journal == null ? 0 : journal.write(loan);
+        }
+        if (journal != null) journal.sync(seq);
     }
 
     @Override
     public void update(Loan loan) {
-        for (int i = 0; i < loans.size(); i++) {
-            Loan l = loans.get(i);
-            if (l.equals(loan)) {
-                loans.set(i, loan);
-                return;
+        long seq;
+        synchronized (this) {
+            apply(loan);
+            modifications.incrementAndGet();
+            dirty.incrementAndGet();
+            seq = journal == null ? 0 : journal.write(loan);
+        }
+        if (journal != null) journal.sync(seq);
+    }
+
+    @Override
+    public void saveAll(List<Loan> batch) {
+        if (batch.isEmpty()) return;
+        long seq = 0;
+        synchronized (this) {
+            for (Loan loan : batch) {
+                index(loan, loans.append(loan));
+                if (journal != null) seq = journal.write(loan);
+            }
+            modifications.addAndGet(batch.size());
+            dirty.addAndGet(batch.size());
+        }
+        if (journal != null) journal.sync(seq);
+    }
+
+    @Override
+    public void updateAll(List<Loan> batch) {
+        if (batch.isEmpty()) return;
+        long seq = 0;
+        synchronized (this) {
+            for (Loan loan : batch) {
+                apply(loan);
+                if (journal != null) seq = journal.write(loan);
             }
+            modifications.addAndGet(batch.size());
+            dirty.addAndGet(batch.size());
         }
-        loans.add(loan);
+        if (journal != null) journal.sync(seq);
     }
 
     /**
      * Persist current loans to the backing file.
      *
+     * @return the number of bytes written
      * @throws IOException if writing fails
      */
-    public synchronized void persist() throws IOException {
-        List<Loan> list = findAll();
-        Files.createDirectories(file.getParent());
-        Files.writeString(file, JsonUtil.pretty(list));
+    public long persist() throws IOException {
+        synchronized (persistLock) {
+            return SnapshotWriter.write(file, findAll());
+        }
+    }
+
+    /**
+     * Fold the journal into the backing file: seal the current journal segment, persist a
+     * snapshot and delete the sealed segments. Writes continue into the new segment meanwhile;
+     * they may or may not be part of the snapshot, which replay tolerates.
+     *
+     * @return the number of bytes written
+     * @throws IOException if writing the snapshot or deleting segments fails
+     */
+    @Override
+    public long compact() throws IOException {
+        long pending = dirty.getAndSet(0);
+        try {
+            if (journal == null) return persist();
+            List<Path> sealed = journal.roll();
+            long bytes = persist();
+            journal.discard(sealed);
+            return bytes;
+        } catch (IOException e) {
+            dirty.addAndGet(pending);
+            throw e;
+        }
+    }
+
+    @Override
+    public String snapshotName() {
+        return "loans";
+    }
+
+    @Override
+    public long dirtyCount() {
+        return dirty.get();
+    }
+
+    /**
+     * Upsert a loan by identity without journaling it. Callers must hold the write lock.
+     */
+    private void apply(Loan loan) {
+        Integer pos = slotOf(loan.deviceId(), loan.borrowedAt());
+        if (pos == null) {
+            index(loan, loans.append(loan));
+            return;
+        }
+        Loan previous = loans.set(pos, loan);
+        if (!previous.userId().equals(loan.userId())) {
+            byUser.computeIfPresent(previous.userId(), (k, slots) -> slots.without(pos));
+            byUser.computeIfAbsent(loan.userId(), k -> new LoanLog.Slots()).add(pos);
+        }
+        if (loan.returnedAt() == null) {
+            openByDevice.putIfAbsent(loan.deviceId(), pos);
+        } else {
+            openByDevice.remove(loan.deviceId(), pos);
+        }
+    }
+
+    /**
+     * Return the slot of the first loan with the given identity, or null.
+     */
+    private Integer slotOf(String deviceId, Instant borrowedAt) {
+        int slot = loans.find(deviceId, borrowedAt);
+        return slot < 0 ? null : slot;
+    }
+
+    private Optional<Loan> lookup(Integer pos) {
+        return pos == null ? Optional.empty() : Optional.of(loans.get(pos));
+    }
+
+    /**
+     * Add the loan stored in the given slot to all indexes. The first open loan and the
+     * first loan per identity win, matching the previous first-match scans.
+     */
+    private void index(Loan loan, int pos) {
+        byUser.computeIfAbsent(loan.userId(), k -> new LoanLog.Slots()).add(pos);
+        if (loan.returnedAt() == null) {
+            openByDevice.putIfAbsent(loan.deviceId(), pos);
+        }
     }
 }
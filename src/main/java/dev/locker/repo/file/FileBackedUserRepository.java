@@ -1,6 +1,5 @@
 package dev.locker.repo.file;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import dev.locker.domain.User;
 import dev.locker.repo.UserRepository;
 import dev.locker.util.JsonUtil;
@@ -14,14 +13,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * File-backed user repository.
  */
-public class FileBackedUserRepository implements UserRepository {
+public class FileBackedUserRepository implements UserRepository, Snapshottable {
     private static final Logger logger = LoggerFactory.getLogger(FileBackedUserRepository.class);
     private final Path file;
+    private final Object persistLock = new Object();
     private final Map<String, User> map = new ConcurrentHashMap<>();
 
     /**
@@ -33,9 +32,7 @@ public class FileBackedUserRepository implements UserRepository {
         this.file = file;
         try {
             if (Files.exists(file)) {
-                List<User> list = JsonUtil.mapper().readValue(Files.readAllBytes(file), new TypeReference<>() {
-                });
-                map.putAll(list.stream().collect(Collectors.toMap(User::id, u -> u)));
+                JsonUtil.readArray(file, User.class, u -> map.put(u.id(), u));
             }
         } catch (IOException e) {
             logger.error("Failed to load users from {}", file, e);
@@ -55,11 +52,32 @@ public class FileBackedUserRepository implements UserRepository {
     /**
      * Persist current users to the backing file.
      *
+     * @return the number of bytes written
      * @throws IOException if writing fails
      */
-    public synchronized void persist() throws IOException {
-        List<User> list = findAll();
-        Files.createDirectories(file.getParent());
-        Files.writeString(file, JsonUtil.pretty(list));
+    public long persist() throws IOException {
+        synchronized (persistLock) {
+            return SnapshotWriter.write(file, map.values());
+        }
+    }
+
+    @Override
+    public String snapshotName() {
+        return "users";
+    }
+
+    /**
+     * Users are read-only at runtime, so there are never pending writes.
+     *
+     * @return always 0
+     */
+    @Override
+    public long dirtyCount() {
+        return 0;
+    }
+
+    @Override
+    public long compact() throws IOException {
+        return persist();
     }
 }
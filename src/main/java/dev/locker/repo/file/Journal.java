@@ -0,0 +1,264 @@
+package dev.locker.repo.file;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import dev.locker.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead journal for one repository.
+ * <p>
+ * Every record is written as one compact JSON line. The journal is split into numbered segment
+ * files ({@code <name>.journal.<n>}); {@link #roll()} seals the current segment so that it can
+ * be discarded once a snapshot containing its records has been written. Records are upserts of
+ * whole entities, so replaying a record that is already part of the snapshot is harmless.
+ * <p>
+ * Durability uses group commit: {@link #write(Object)} only hands the record to the OS, and
+ * {@link #sync(long)} waits until it has been forced to disk. The first waiter becomes the
+ * leader and issues one {@code fsync} covering every record written so far; writers arriving
+ * meanwhile wait for the next round, so concurrent writers share fsyncs.
+ */
+public final class Journal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+    private static final String SUFFIX = ".journal.";
+
+    private final Path dir;
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final List<Path> sealed = new ArrayList<>();
+    private FileChannel channel;
+    private Path current;
+    private long written;
+    private long durable;
+    private boolean syncing;
+
+    /**
+     * Open the journal with the given name in the given directory. Existing segments are kept
+     * for {@link #replay(Class, Consumer)} (empty ones are deleted); new records go to a fresh
+     * segment.
+     *
+     * @param dir  the directory holding the journal segments
+     * @param name the journal name, e.g. {@code loans}
+     * @throws IOException if the directory or the new segment cannot be created
+     */
+    public Journal(Path dir, String name) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        Files.createDirectories(dir);
+        long next = 1;
+        for (Path segment : segments()) {
+            next = segmentNumber(segment) + 1;
+            if (Files.size(segment) == 0) {
+                Files.delete(segment);
+            } else {
+                sealed.add(segment);
+            }
+        }
+        openSegment(next);
+    }
+
+    /**
+     * Feed every record of the sealed segments, oldest first, to the given sink. A torn final
+     * line (crash during a write) ends the replay of that segment; an undecodable line followed
+     * by further records is corruption and fails the replay.
+     *
+     * @param type the record type
+     * @param sink receives the decoded records
+     * @param <T>  the record type
+     * @return the number of records replayed
+     * @throws IOException if a segment cannot be read or is corrupt
+     */
+    public <T> int replay(Class<T> type, Consumer<T> sink) throws IOException {
+        int count = 0;
+        for (Path segment : List.copyOf(sealed)) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    T record;
+                    try {
+                        record = JsonUtil.mapper().readValue(line, type);
+                    } catch (JsonProcessingException e) {
+                        if (hasMoreRecords(reader)) {
+                            throw new IOException("Corrupt record in " + segment, e);
+                        }
+                        logger.warn("Ignoring torn record at the end of {}", segment);
+                        break;
+                    }
+                    sink.accept(record);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Append a record without waiting for it to reach the disk. Callers that hold a lock while
+     * mutating their in-memory state should write under that lock and {@link #sync(long)} after
+     * releasing it, so that journal order matches memory order without serializing fsyncs.
+     *
+     * @param record the record to append
+     * @return the sequence number to pass to {@link #sync(long)}
+     */
+    public long write(Object record) {
+        byte[] bytes;
+        try {
+            bytes = JsonUtil.mapper().writeValueAsBytes(record);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(bytes.length + 1).put(bytes).put((byte) '\n').flip();
+        lock.lock();
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            return ++written;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the record with the given sequence number is durable.
+     *
+     * @param seq a sequence number returned by {@link #write(Object)}
+     */
+    public void sync(long seq) {
+        lock.lock();
+        try {
+            while (durable < seq) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = written;
+                FileChannel ch = channel;
+                lock.unlock();
+                try {
+                    ch.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                durable = Math.max(durable, target);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append a record and wait until it is durable.
+     *
+     * @param record the record to append
+     */
+    public void append(Object record) {
+        sync(write(record));
+    }
+
+    /**
+     * Seal the current segment and continue in a new one.
+     *
+     * @return every sealed segment, including ones left over from earlier runs
+     * @throws IOException if the current segment cannot be closed or the new one created
+     */
+    public List<Path> roll() throws IOException {
+        lock.lock();
+        try {
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            channel.force(false);
+            channel.close();
+            durable = written;
+            sealed.add(current);
+            openSegment(segmentNumber(current) + 1);
+            return List.copyOf(sealed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete sealed segments whose records are contained in a snapshot.
+     *
+     * @param segments segments previously returned by {@link #roll()}
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void discard(List<Path> segments) throws IOException {
+        lock.lock();
+        try {
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+                sealed.remove(segment);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean hasMoreRecords(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private void openSegment(long number) throws IOException {
+        current = dir.resolve(name + SUFFIX + number);
+        channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(name + SUFFIX))
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .toList();
+        }
+    }
+
+    private long segmentNumber(Path segment) {
+        String file = segment.getFileName().toString();
+        return Long.parseLong(file.substring(name.length() + SUFFIX.length()));
+    }
+}
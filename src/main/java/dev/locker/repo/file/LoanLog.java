@@ -0,0 +1,355 @@
+package dev.locker.repo.file;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.IdDictionary;
+import dev.locker.repo.LoanColumns;
+import dev.locker.repo.SlotHistory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Append-only, segmented log of loans addressed by stable slot numbers.
+ * <p>
+ * Loans are not kept as objects. Device and user ids are interned into int codes through an
+ * {@link IdDictionary} and the timestamps are stored as epoch nanoseconds, so one loan occupies
+ * one element in each of five primitive columns ({@code int[]} device and user, {@code long[]}
+ * borrowedAt, dueAt and returnedAt) of a fixed-size segment: 32 bytes instead of a record, two
+ * strings and up to three {@link Instant}s. {@link Loan} records are materialized on read.
+ * <p>
+ * Segments are never copied once allocated; growing the log only copies the (small) segment
+ * directory. A single writer at a time appends or replaces slots while any number of readers
+ * access the log without locking. The published size is volatile, so readers that observe a size
+ * also observe every loan appended below it. In-place replacements never change a slot's device
+ * or borrowedAt; the remaining columns are guarded by a per-segment sequence number that readers
+ * validate, so a concurrent reader never sees half of an update. The values an update replaces
+ * are kept in a {@link SlotHistory} while a {@link #snapshot()} taken earlier may still read them.
+ * <p>
+ * Loans are identified by device and borrowedAt. An open-addressing table of slot numbers, hashed
+ * by the identity columns and compared against them, finds the slot of an identity in O(1)
+ * without storing the keys a second time.
+ * <p>
+ * As {@link LoanColumns} the log hands its segment arrays to analytical scans without copying.
+ */
+final class LoanLog implements LoanColumns {
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final VarHandle TABLE_ENTRY = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final IdDictionary ids;
+    private final SlotHistory history = new SlotHistory();
+    private volatile Segment[] segments = new Segment[0];
+    private volatile int size;
+    // slot + 1 per identity, 0 for a free entry; entries are published with release stores
+    private volatile int[] identities = new int[64];
+    private int identityCount;
+
+    /**
+     * Create an empty log.
+     *
+     * @param ids the dictionary interning device and user ids
+     */
+    LoanLog(IdDictionary ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Append a loan. Callers must serialize writes.
+     *
+     * @param loan the loan to append
+     * @return the slot the loan was stored in
+     * @throws IllegalArgumentException if a timestamp is outside the range of epoch nanoseconds
+     */
+    int append(Loan loan) {
+        int slot = size;
+        int segment = slot >>> SEGMENT_SHIFT;
+        Segment[] dir = segments;
+        if (segment == dir.length) {
+            dir = Arrays.copyOf(dir, dir.length + 1);
+            dir[segment] = new Segment();
+            segments = dir;
+        }
+        Segment s = dir[segment];
+        int i = slot & SEGMENT_MASK;
+        s.device[i] = ids.intern(loan.deviceId());
+        s.borrowedAt[i] = toNanos(loan.borrowedAt());
+        s.write(i, ids.intern(loan.userId()), toNanos(loan.dueAt()), toNanosOrNone(loan.returnedAt()));
+        if (find(s.device[i], s.borrowedAt[i]) < 0) addIdentity(slot);
+        size = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Replace the loan stored in an existing slot. The new loan must have the device and
+     * borrowedAt of the stored one. Callers must serialize writes.
+     *
+     * @param slot the slot to overwrite
+     * @param loan the new loan
+     * @return the loan previously stored in the slot
+     */
+    Loan set(int slot, Loan loan) {
+        Loan previous = get(slot);
+        Segment s = segments[slot >>> SEGMENT_SHIFT];
+        int i = slot & SEGMENT_MASK;
+        int user = ids.intern(loan.userId());
+        long due = toNanos(loan.dueAt());
+        long returned = toNanosOrNone(loan.returnedAt());
+        history.replacing(slot, s.user[i], s.dueAt[i], s.returnedAt[i]);
+        s.beginWrite();
+        s.write(i, user, due, returned);
+        s.endWrite();
+        return previous;
+    }
+
+    /**
+     * Read the loan stored in a slot.
+     *
+     * @param slot a slot previously returned by {@link #append(Loan)}
+     * @return the current loan in that slot
+     */
+    Loan get(int slot) {
+        return segments[slot >>> SEGMENT_SHIFT].read(ids, slot & SEGMENT_MASK);
+    }
+
+    /**
+     * Return the slot of the first loan appended with the given identity.
+     *
+     * @param deviceId   the device id of the loan
+     * @param borrowedAt the instant the device was borrowed at
+     * @return the slot, or -1 if there is no such loan
+     */
+    int find(String deviceId, Instant borrowedAt) {
+        int device = ids.codeOf(deviceId);
+        if (device < 0) return -1;
+        try {
+            return find(device, toNanos(borrowedAt));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private int find(int device, long borrowedAt) {
+        int[] table = identities;
+        int mask = table.length - 1;
+        for (int i = hash(device, borrowedAt) & mask; ; i = (i + 1) & mask) {
+            int entry = (int) TABLE_ENTRY.getAcquire(table, i);
+            if (entry == 0) return -1;
+            int slot = entry - 1;
+            // read after the entry: the segment of a slot is published before its entry
+            Segment s = segments[slot >>> SEGMENT_SHIFT];
+            if (s.device[slot & SEGMENT_MASK] == device && s.borrowedAt[slot & SEGMENT_MASK] == borrowedAt) return slot;
+        }
+    }
+
+    /**
+     * Add a slot to the identity table, growing it beyond two thirds full. A grown table is
+     * filled completely before it is published, so readers see either table in a usable state.
+     */
+    private void addIdentity(int slot) {
+        int[] table = identities;
+        if ((identityCount + 1) * 3 > table.length * 2) {
+            int[] grown = new int[table.length * 2];
+            for (int entry : table) {
+                if (entry != 0) insert(grown, entry - 1);
+            }
+            identities = grown;
+            table = grown;
+        }
+        insert(table, slot);
+        identityCount++;
+    }
+
+    private void insert(int[] table, int slot) {
+        Segment s = segments[slot >>> SEGMENT_SHIFT];
+        int mask = table.length - 1;
+        int i = hash(s.device[slot & SEGMENT_MASK], s.borrowedAt[slot & SEGMENT_MASK]) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        TABLE_ENTRY.setRelease(table, i, slot + 1);
+    }
+
+    private static int hash(int device, long borrowedAt) {
+        long h = (borrowedAt ^ (borrowedAt >>> 29)) * 0x9E3779B97F4A7C15L + device;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Return the number of slots in use.
+     *
+     * @return the log size
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public IdDictionary ids() {
+        return ids;
+    }
+
+    @Override
+    public void read(int from, int to, Block block) {
+        Segment[] dir = segments;
+        while (from < to) {
+            Segment s = dir[from >>> SEGMENT_SHIFT];
+            int start = from & SEGMENT_MASK;
+            int end = Math.min(SEGMENT_SIZE, start + (to - from));
+            block.accept(s.device, s.user, s.borrowedAt, s.dueAt, s.returnedAt, start, end);
+            from += end - start;
+        }
+    }
+
+    /**
+     * Return an unmodifiable snapshot of the log as of the call: loans appended afterwards are not
+     * part of it, and slots replaced afterwards (e.g. on return) keep the value they had. Nothing
+     * is copied; elements are read from the segments on access, with the values of later
+     * replacements taken from the history. Callers must serialize this with writes.
+     *
+     * @return a fixed-size read-only snapshot of the log
+     */
+    List<Loan> snapshot() {
+        return new View(segments, size, history.snapshot());
+    }
+
+    private static long toNanos(Instant instant) {
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Timestamp out of range: " + instant, e);
+        }
+    }
+
+    private static long toNanosOrNone(Instant instant) {
+        return instant == null ? NOT_RETURNED : toNanos(instant);
+    }
+
+    private static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    /**
+     * Columns of {@link #SEGMENT_SIZE} loans. {@code version} is a sequence lock over the mutable
+     * columns: odd while a replacement is in progress, bumped again when it is complete.
+     */
+    private static final class Segment {
+        final int[] device = new int[SEGMENT_SIZE];
+        final int[] user = new int[SEGMENT_SIZE];
+        final long[] borrowedAt = new long[SEGMENT_SIZE];
+        final long[] dueAt = new long[SEGMENT_SIZE];
+        final long[] returnedAt = new long[SEGMENT_SIZE];
+        volatile int version;
+
+        void write(int i, int userCode, long due, long returned) {
+            user[i] = userCode;
+            dueAt[i] = due;
+            returnedAt[i] = returned;
+        }
+
+        void beginWrite() {
+            version++;
+            VarHandle.storeStoreFence();
+        }
+
+        void endWrite() {
+            version++;
+        }
+
+        Loan read(IdDictionary ids, int i) {
+            while (true) {
+                int v = version;
+                if ((v & 1) == 0) {
+                    int userCode = user[i];
+                    long due = dueAt[i];
+                    long returned = returnedAt[i];
+                    VarHandle.loadLoadFence();
+                    if (version == v) {
+                        return loan(ids, i, userCode, due, returned);
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        Loan loan(IdDictionary ids, int i, int userCode, long due, long returned) {
+            return new Loan(ids.idOf(device[i]), ids.idOf(userCode), toInstant(borrowedAt[i]), toInstant(due),
+                    returned == NOT_RETURNED ? null : toInstant(returned));
+        }
+    }
+
+    private final class View extends AbstractList<Loan> implements RandomAccess {
+        private final Segment[] segments;
+        private final int size;
+        private final SlotHistory.Snapshot snapshot;
+
+        View(Segment[] segments, int size, SlotHistory.Snapshot snapshot) {
+            this.segments = segments;
+            this.size = size;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Loan get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            Segment s = segments[index >>> SEGMENT_SHIFT];
+            int i = index & SEGMENT_MASK;
+            // the current value first: an update it misses has recorded what it replaces
+            Loan current = s.read(ids, i);
+            SlotHistory.Entry before = history.before(snapshot, index);
+            return before == null ? current : s.loan(ids, i, before.user(), before.dueAt(), before.returnedAt());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Growable list of slot numbers with the same single-writer / many-readers contract as the
+     * log itself. Used for the secondary indexes so that appending to them is amortized O(1)
+     * instead of a copy of every entry already present.
+     */
+    static final class Slots {
+        private volatile int[] slots = new int[4];
+        private volatile int size;
+
+        void add(int slot) {
+            int n = size;
+            int[] arr = slots;
+            if (n == arr.length) {
+                arr = Arrays.copyOf(arr, n * 2);
+                slots = arr;
+            }
+            arr[n] = slot;
+            size = n + 1;
+        }
+
+        /**
+         * Return a copy of these slots without the given one. Removal is rare (a loan moving to
+         * another user), so it swaps in a new instance rather than mutating in place.
+         */
+        Slots without(int slot) {
+            Slots copy = new Slots();
+            for (int s : toArray()) {
+                if (s != slot) copy.add(s);
+            }
+            return copy;
+        }
+
+        int[] toArray() {
+            int n = size;
+            return Arrays.copyOf(slots, n);
+        }
+
+    }
+}
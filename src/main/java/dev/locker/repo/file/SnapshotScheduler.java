@@ -0,0 +1,129 @@
+package dev.locker.repo.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes repository snapshots on a background thread.
+ * <p>
+ * A target is snapshotted when it has pending writes and either the snapshot interval has
+ * elapsed since its last snapshot or the number of pending writes reached the dirty threshold.
+ * Duration and size of every snapshot are recorded per target.
+ */
+public final class SnapshotScheduler implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotScheduler.class);
+    private static final long MAX_CHECK_MILLIS = 1000;
+
+    private final List<Snapshottable> targets;
+    private final long intervalNanos;
+    private final long dirtyThreshold;
+    private final Map<String, Long> lastSnapshotNanos = new ConcurrentHashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Snapshot metrics of one target.
+     *
+     * @param count          number of snapshots taken
+     * @param lastDurationMs duration of the last snapshot in milliseconds
+     * @param lastBytes      size of the last snapshot in bytes
+     * @param totalBytes     bytes written by all snapshots
+     */
+    public record Stats(long count, long lastDurationMs, long lastBytes, long totalBytes) {
+        static final Stats EMPTY = new Stats(0, 0, 0, 0);
+    }
+
+    /**
+     * Create a scheduler for the given targets. Call {@link #start()} to begin snapshotting.
+     *
+     * @param targets        the repositories to snapshot
+     * @param interval       maximum time a write may stay outside a snapshot
+     * @param dirtyThreshold number of pending writes that triggers an early snapshot; 0 disables
+     */
+    public SnapshotScheduler(List<Snapshottable> targets, Duration interval, long dirtyThreshold) {
+        this.targets = List.copyOf(targets);
+        this.intervalNanos = interval.toNanos();
+        this.dirtyThreshold = dirtyThreshold;
+        long now = System.nanoTime();
+        for (Snapshottable t : targets) {
+            lastSnapshotNanos.put(t.snapshotName(), now);
+            stats.put(t.snapshotName(), Stats.EMPTY);
+        }
+    }
+
+    /**
+     * Start checking the targets periodically.
+     */
+    public void start() {
+        long period = Math.max(1, Math.min(MAX_CHECK_MILLIS, TimeUnit.NANOSECONDS.toMillis(intervalNanos)));
+        executor.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return snapshot metrics for the target with the given name.
+     *
+     * @param name the target's {@link Snapshottable#snapshotName()}
+     * @return the metrics, all zero if no snapshot was taken yet
+     */
+    public Stats stats(String name) {
+        return stats.getOrDefault(name, Stats.EMPTY);
+    }
+
+    /**
+     * Stop the background thread and take a final snapshot of every target with pending writes.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Snapshottable t : targets) {
+            if (t.dirtyCount() > 0) snapshot(t);
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (Snapshottable t : targets) {
+            long dirty = t.dirtyCount();
+            if (dirty == 0) continue;
+            boolean due = now - lastSnapshotNanos.get(t.snapshotName()) >= intervalNanos;
+            if (due || (dirtyThreshold > 0 && dirty >= dirtyThreshold)) {
+                snapshot(t);
+            }
+        }
+    }
+
+    private void snapshot(Snapshottable t) {
+        long start = System.nanoTime();
+        try {
+            long bytes = t.compact();
+            long end = System.nanoTime();
+            long ms = TimeUnit.NANOSECONDS.toMillis(end - start);
+            lastSnapshotNanos.put(t.snapshotName(), end);
+            stats.compute(t.snapshotName(), (k, s) -> {
+                Stats prev = s == null ? Stats.EMPTY : s;
+                return new Stats(prev.count() + 1, ms, bytes, prev.totalBytes() + bytes);
+            });
+            logger.info("Snapshot of {} written: {} bytes in {} ms", t.snapshotName(), bytes, ms);
+        } catch (Exception e) {
+            logger.error("Snapshot of {} failed", t.snapshotName(), e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dev.locker.repo.file;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.locker.util.JsonUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes repository snapshots crash-safely.
+ * <p>
+ * Items are streamed one by one through a Jackson {@link JsonGenerator} into a temporary file
+ * next to the target, so no String of the whole dataset is ever built. The temporary file is
+ * fsynced and then atomically renamed over the target: readers and a crash at any point see
+ * either the previous or the new snapshot, never a partial one.
+ */
+public final class SnapshotWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ObjectWriter WRITER = JsonUtil.mapper().writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private SnapshotWriter() {
+    }
+
+    /**
+     * Write the given items as a JSON array to {@code file}.
+     *
+     * @param file  the snapshot file to replace
+     * @param items the items to write, iterated exactly once
+     * @return the number of bytes written
+     * @throws IOException if writing, syncing or renaming fails
+     */
+    public static long write(Path file, Iterable<?> items) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        long bytes;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            try (JsonGenerator gen = WRITER.createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                gen.writeStartArray();
+                for (Object item : items) {
+                    WRITER.writeValue(gen, item);
+                }
+                gen.writeEndArray();
+            }
+            out.flush();
+            bytes = channel.size();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(dir);
+        return bytes;
+    }
+
+    /**
+     * Make the rename durable. Not every platform allows opening a directory; there the rename
+     * is left to the file system's own ordering guarantees.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
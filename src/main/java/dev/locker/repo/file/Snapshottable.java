@@ -0,0 +1,30 @@
+package dev.locker.repo.file;
+
+import java.io.IOException;
+
+/**
+ * A repository whose in-memory state can be folded into an on-disk snapshot.
+ */
+public interface Snapshottable {
+    /**
+     * Return a short name identifying the snapshot (e.g. {@code loans}).
+     *
+     * @return the snapshot name
+     */
+    String snapshotName();
+
+    /**
+     * Return the number of writes since the last snapshot was started.
+     *
+     * @return the number of pending writes
+     */
+    long dirtyCount();
+
+    /**
+     * Write a snapshot of the current contents and drop the journal segments it covers.
+     *
+     * @return the number of bytes written
+     * @throws IOException if writing the snapshot fails
+     */
+    long compact() throws IOException;
+}
@@ -0,0 +1,84 @@
+package dev.locker.repo.mmap;
+
+import dev.locker.domain.Loan;
+import dev.locker.util.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * One-shot converter from a {@code loans.json} snapshot to the binary format of
+ * {@link MappedLoanRepository}.
+ * <p>
+ * Usage: {@code java -cp ... dev.locker.repo.mmap.LoanFileConverter data/loans.json data/loans.bin}
+ */
+public final class LoanFileConverter {
+    private static final Logger logger = LoggerFactory.getLogger(LoanFileConverter.class);
+
+    private LoanFileConverter() {
+    }
+
+    /**
+     * Convert the JSON loan file to a new binary loan file. The JSON is streamed, so the heap
+     * needed does not depend on the file size.
+     * <p>
+     * The conversion writes to a temporary file next to the target, forces it and only then
+     * moves it into place, sidecars first and the loan file last: the target appears complete or
+     * not at all, and a failed or interrupted conversion is simply run again. Sidecars left
+     * without their loan file by such a run are replaced.
+     *
+     * @param json   the source JSON array of loans
+     * @param target the binary file to create; it must not exist yet
+     * @return the number of loans converted
+     * @throws IOException if reading the source or writing the target fails, or the target exists
+     */
+    public static long convert(Path json, Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new IOException("Target already exists: " + target);
+        }
+        long start = System.nanoTime();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        List<Path> files = List.of(tmp, MappedLoanRepository.idsFile(tmp), MappedLoanRepository.openLoansFile(tmp));
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        long count;
+        try (MappedLoanRepository repo = new MappedLoanRepository(tmp)) {
+            count = JsonUtil.readArray(json, Loan.class, loan -> repo.append(loan, false));
+            repo.sync();
+        }
+        Files.move(MappedLoanRepository.idsFile(tmp), MappedLoanRepository.idsFile(target),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(MappedLoanRepository.openLoansFile(tmp), MappedLoanRepository.openLoansFile(target),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.toAbsolutePath().getParent());
+        logger.info("Converted {} loans from {} to {} in {} ms", count, json, target, (System.nanoTime() - start) / 1_000_000);
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LoanFileConverter <loans.json> <loans.bin>");
+            System.exit(2);
+        }
+        convert(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /**
+     * Make the renames durable where the platform allows opening a directory.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
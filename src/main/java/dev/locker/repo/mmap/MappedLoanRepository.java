@@ -0,0 +1,627 @@
+package dev.locker.repo.mmap;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.IdDictionary;
+import dev.locker.repo.LoanColumns;
+import dev.locker.repo.LoanRepository;
+import dev.locker.repo.SlotHistory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loan repository storing fixed-width binary records in a memory-mapped file.
+ * <p>
+ * Layout: a 64-byte header (magic, format version, record count) followed by 32-byte records
+ * of {@code int deviceCode, int userCode, long borrowedAt, long dueAt, long returnedAt}. Ids
+ * are interned through an {@link IdDictionary} whose entries are appended to a sidecar file
+ * ({@code <file>.ids}, one id per line, in code order). Instants are stored as epoch
+ * nanoseconds, so loans read back from this repository equal the loans written; a missing
+ * {@code returnedAt} is stored as {@link Long#MIN_VALUE}. Files of format version 1 stored
+ * epoch milliseconds and are upgraded in place when opened.
+ * <p>
+ * Records are mapped in fixed-size chunks and decoded on access, so opening the repository
+ * does not parse the history and the heap holds only the dictionary and an open-loan index
+ * sized by the number of devices. Closing the repository saves the open-loan index to a second
+ * sidecar ({@code <file>.open}) that the next open reads and deletes; only after a crash does
+ * opening scan the records to rebuild it. Lookups other than the open loan of a device scan
+ * the file. Every write is forced to disk before it returns.
+ * <p>
+ * New records are written before the count that covers them is published. In-place updates
+ * only change the user, due and returned fields, under a per-chunk sequence lock as in
+ * {@code LoanLog}: readers that overlap an update retry, so they never decode half a record.
+ * The values an update replaces are kept on the heap, in a {@link SlotHistory}, only while a
+ * snapshot returned by {@link #findAll()} before the update is still in use.
+ */
+public class MappedLoanRepository implements LoanRepository, Closeable {
+    private static final int MAGIC = 0x4C4F414E;
+    private static final int VERSION = 2;
+    private static final int VERSION_MILLIS = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 8;
+    static final int RECORD_BYTES = 32;
+    private static final int CHUNK_RECORDS = 1 << 20;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_BYTES;
+    private static final long NO_INSTANT = LoanColumns.NOT_RETURNED;
+    private static final int COLUMN_RUN = 4096;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final IdDictionary ids = new IdDictionary();
+    private final FileChannel idsChannel;
+    private final Path openFile;
+    private final Map<Integer, Integer> openByDevice = new ConcurrentHashMap<>();
+    private final SlotHistory history = new SlotHistory();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int count;
+    private volatile long modifications; // written only while holding the monitor
+    private final LoanColumns columns = new Columns();
+
+    /**
+     * Open (or create) the mapped loan file.
+     *
+     * @param file the binary loan file
+     * @throws IOException if the file or its id sidecar cannot be opened, or has an unknown format
+     */
+    public MappedLoanRepository(Path file) throws IOException {
+        Path idsFile = idsFile(file);
+        if (Files.exists(idsFile)) {
+            for (String id : Files.readAllLines(idsFile, StandardCharsets.UTF_8)) {
+                ids.intern(id);
+            }
+        }
+        idsChannel = FileChannel.open(idsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = channel.size() == 0;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        if (fresh) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putLong(COUNT_OFFSET, 0);
+            header.force();
+        } else if (header.getInt(0) != MAGIC || (header.getInt(4) != VERSION && header.getInt(4) != VERSION_MILLIS)) {
+            throw new IOException("Not a loan file: " + file);
+        }
+        int n = Math.toIntExact(header.getLong(COUNT_OFFSET));
+        ensureCapacity(n);
+        count = n;
+        if (header.getInt(4) == VERSION_MILLIS) upgradeFromMillis(file, n);
+        openFile = openLoansFile(file);
+        if (!loadOpenLoans(n)) {
+            for (int slot = 0; slot < n; slot++) {
+                if (returnedAt(slot) == NO_INSTANT) {
+                    openByDevice.putIfAbsent(deviceCode(slot), slot);
+                }
+            }
+        }
+        // from here on the saved index goes stale; it is written again by close()
+        Files.deleteIfExists(openFile);
+    }
+
+    /**
+     * Load the open-loan index saved by {@link #close()}: the record count it was saved at, the
+     * number of open loans and their slots. It is only used if it covers exactly the records
+     * in the file and every slot it names holds an open loan.
+     *
+     * @return whether the index was loaded
+     */
+    private boolean loadOpenLoans(int n) {
+        if (!Files.exists(openFile)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(openFile)))) {
+            if (in.readInt() != n) return false;
+            int open = in.readInt();
+            Map<Integer, Integer> loaded = new HashMap<>();
+            for (int i = 0; i < open; i++) {
+                int slot = in.readInt();
+                if (slot < 0 || slot >= n || returnedAt(slot) != NO_INSTANT) return false;
+                loaded.putIfAbsent(deviceCode(slot), slot);
+            }
+            openByDevice.putAll(loaded);
+            return true;
+        } catch (IOException e) {
+            // a damaged index is rebuilt from the records
+            return false;
+        }
+    }
+
+    /**
+     * Return the path of the open-loan sidecar file belonging to a loan file.
+     *
+     * @param file the binary loan file
+     * @return the sidecar path
+     */
+    static Path openLoansFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".open");
+    }
+
+    /**
+     * Rewrite the timestamps of a version 1 file from epoch milliseconds to epoch nanoseconds.
+     * The records are forced before the header names the new version, so a crash during the
+     * upgrade leaves a version 1 file that is upgraded again on the next open.
+     */
+    private void upgradeFromMillis(Path file, int n) throws IOException {
+        for (int slot = 0; slot < n; slot++) {
+            MappedByteBuffer chunk = chunks[slot / CHUNK_RECORDS].buffer;
+            int pos = (slot % CHUNK_RECORDS) * RECORD_BYTES;
+            for (int field = pos + 8; field <= pos + 24; field += 8) {
+                long millis = chunk.getLong(field);
+                if (millis == NO_INSTANT) continue;
+                try {
+                    chunk.putLong(field, Math.multiplyExact(millis, NANOS_PER_MILLI));
+                } catch (ArithmeticException e) {
+                    throw new IOException("Timestamp out of range in record " + slot + " of " + file, e);
+                }
+            }
+        }
+        sync();
+        header.putInt(4, VERSION);
+        header.force();
+    }
+
+    /**
+     * Return the path of the id sidecar file belonging to a loan file.
+     *
+     * @param file the binary loan file
+     * @return the sidecar path
+     */
+    static Path idsFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".ids");
+    }
+
+    /**
+     * Return a read-only snapshot of all loans. Nothing is copied: elements are decoded from the
+     * mapped file on access, the snapshot is bounded by the record count at call time and records
+     * updated afterwards are read with the values they had at the call.
+     */
+    @Override
+    public synchronized List<Loan> findAll() {
+        return new View(count, history.snapshot());
+    }
+
+    @Override
+    public Optional<Loan> findOpenLoanByDevice(String deviceId) {
+        int code = ids.codeOf(deviceId);
+        if (code < 0) return Optional.empty();
+        Integer slot = openByDevice.get(code);
+        return slot == null ? Optional.empty() : Optional.of(read(slot));
+    }
+
+    @Override
+    public List<Loan> findOpenLoans() {
+        List<Loan> result = new ArrayList<>(openByDevice.size());
+        for (int slot : openByDevice.values()) {
+            result.add(read(slot));
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public List<Loan> findByUser(String userId) {
+        int code = ids.codeOf(userId);
+        if (code < 0) return List.of();
+        List<Loan> result = new ArrayList<>();
+        int n = count;
+        for (int slot = 0; slot < n; slot++) {
+            if (userCode(slot) == code) result.add(read(slot));
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public Optional<Loan> findByDeviceAndBorrowedAt(String deviceId, Instant borrowedAt) {
+        int code = ids.codeOf(deviceId);
+        if (code < 0) return Optional.empty();
+        int slot;
+        try {
+            slot = find(code, toNanos(borrowedAt));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        return slot < 0 ? Optional.empty() : Optional.of(read(slot));
+    }
+
+    /**
+     * Return the records as columns. Runs of records are decoded into arrays under the chunk's
+     * sequence lock, so every row is consistent.
+     */
+    @Override
+    public LoanColumns columns() {
+        return columns;
+    }
+
+    @Override
+    public long version() {
+        return modifications;
+    }
+
+    @Override
+    public synchronized void save(Loan loan) {
+        append(loan, true);
+        modifications++;
+    }
+
+    @Override
+    public synchronized void update(Loan loan) {
+        int slot = find(internId(loan.deviceId()), toNanos(loan.borrowedAt()));
+        if (slot < 0) {
+            save(loan);
+            return;
+        }
+        rewrite(slot, loan);
+        forceRecord(slot);
+        if (loan.returnedAt() == null) {
+            openByDevice.putIfAbsent(deviceCode(slot), slot);
+        } else {
+            openByDevice.remove(deviceCode(slot), slot);
+        }
+        modifications++;
+    }
+
+    @Override
+    public synchronized void saveAll(List<Loan> batch) {
+        if (batch.isEmpty()) return;
+        int first = count;
+        ensureCapacity(first + batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            write(first + i, batch.get(i));
+        }
+        forceRecords(first, first + batch.size() - 1);
+        header.putLong(COUNT_OFFSET, first + batch.size());
+        header.force();
+        count = first + batch.size();
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).returnedAt() == null) {
+                openByDevice.putIfAbsent(deviceCode(first + i), first + i);
+            }
+        }
+        modifications += batch.size();
+    }
+
+    @Override
+    public synchronized void updateAll(List<Loan> batch) {
+        List<Loan> missing = new ArrayList<>();
+        int lowest = Integer.MAX_VALUE;
+        int highest = -1;
+        for (Loan loan : batch) {
+            int slot = find(internId(loan.deviceId()), toNanos(loan.borrowedAt()));
+            if (slot < 0) {
+                missing.add(loan);
+                continue;
+            }
+            rewrite(slot, loan);
+            lowest = Math.min(lowest, slot);
+            highest = Math.max(highest, slot);
+            if (loan.returnedAt() == null) {
+                openByDevice.putIfAbsent(deviceCode(slot), slot);
+            } else {
+                openByDevice.remove(deviceCode(slot), slot);
+            }
+        }
+        if (highest >= 0) forceRecords(lowest, highest);
+        modifications += batch.size() - missing.size();
+        saveAll(missing);
+    }
+
+    /**
+     * Save the open-loan index next to the file and close it. The index is written to a temporary
+     * file first and moved into place, so a crash leaves either no index or a complete one.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Path tmp = openFile.resolveSibling(openFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(count);
+            out.writeInt(openByDevice.size());
+            for (int slot : openByDevice.values()) {
+                out.writeInt(slot);
+            }
+        }
+        Files.move(tmp, openFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        idsChannel.close();
+        channel.close();
+    }
+
+    /**
+     * Append a loan. When forcing, the record reaches the disk before the count that covers it,
+     * so a crash never exposes a partial record. Bulk imports skip forcing and call
+     * {@link #sync()} once at the end.
+     *
+     * @param loan  the loan to append
+     * @param force whether to force the record to disk before returning
+     * @return the slot of the new record
+     */
+    synchronized int append(Loan loan, boolean force) {
+        int slot = count;
+        ensureCapacity(slot + 1);
+        write(slot, loan);
+        if (force) forceRecord(slot);
+        header.putLong(COUNT_OFFSET, slot + 1);
+        if (force) header.force();
+        count = slot + 1;
+        if (loan.returnedAt() == null) {
+            openByDevice.putIfAbsent(deviceCode(slot), slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Force every record and the header to disk.
+     */
+    synchronized void sync() {
+        for (Chunk chunk : chunks) {
+            chunk.buffer.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Find the slot of the loan with the given identity: the open loan of the device first,
+     * otherwise the most recent matching record.
+     */
+    private int find(int deviceCode, long borrowedAtNanos) {
+        Integer open = openByDevice.get(deviceCode);
+        if (open != null && borrowedAt(open) == borrowedAtNanos) return open;
+        for (int slot = count - 1; slot >= 0; slot--) {
+            if (deviceCode(slot) == deviceCode && borrowedAt(slot) == borrowedAtNanos) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Write a loan into a slot that is not yet covered by the count. Every field is converted before the first byte is written, so an
+     * out-of-range timestamp leaves the record untouched.
+     *
+     * @throws IllegalArgumentException if a timestamp is outside the range of epoch nanoseconds
+     */
+    private void write(int slot, Loan loan) {
+        long borrowed = toNanos(loan.borrowedAt());
+        long due = toNanos(loan.dueAt());
+        long returned = loan.returnedAt() == null ? NO_INSTANT : toNanos(loan.returnedAt());
+        MappedByteBuffer chunk = chunks[slot / CHUNK_RECORDS].buffer;
+        int pos = (slot % CHUNK_RECORDS) * RECORD_BYTES;
+        chunk.putInt(pos, internId(loan.deviceId()))
+                .putInt(pos + 4, internId(loan.userId()))
+                .putLong(pos + 8, borrowed)
+                .putLong(pos + 16, due)
+                .putLong(pos + 24, returned);
+    }
+
+    /**
+     * Replace the mutable fields of a published record whose device and borrowedAt match the
+     * loan, under the chunk's sequence lock.
+     *
+     * @throws IllegalArgumentException if a timestamp is outside the range of epoch nanoseconds
+     */
+    private void rewrite(int slot, Loan loan) {
+        int user = internId(loan.userId());
+        long due = toNanos(loan.dueAt());
+        long returned = loan.returnedAt() == null ? NO_INSTANT : toNanos(loan.returnedAt());
+        Chunk chunk = chunks[slot / CHUNK_RECORDS];
+        int pos = (slot % CHUNK_RECORDS) * RECORD_BYTES;
+        history.replacing(slot, chunk.buffer.getInt(pos + 4), chunk.buffer.getLong(pos + 16), chunk.buffer.getLong(pos + 24));
+        chunk.beginWrite();
+        chunk.buffer.putInt(pos + 4, user)
+                .putLong(pos + 16, due)
+                .putLong(pos + 24, returned);
+        chunk.endWrite();
+    }
+
+    private Loan read(int slot) {
+        Chunk chunk = chunks[slot / CHUNK_RECORDS];
+        MappedByteBuffer buffer = chunk.buffer;
+        int pos = (slot % CHUNK_RECORDS) * RECORD_BYTES;
+        while (true) {
+            int v = chunk.version;
+            if ((v & 1) == 0) {
+                int user = buffer.getInt(pos + 4);
+                long due = buffer.getLong(pos + 16);
+                long returned = buffer.getLong(pos + 24);
+                VarHandle.loadLoadFence();
+                if (chunk.version == v) {
+                    return loan(slot, user, due, returned);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private Loan loan(int slot, int user, long due, long returned) {
+        return new Loan(ids.idOf(deviceCode(slot)), ids.idOf(user), toInstant(borrowedAt(slot)),
+                toInstant(due), returned == NO_INSTANT ? null : toInstant(returned));
+    }
+
+    private static long toNanos(Instant instant) {
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Timestamp out of range: " + instant, e);
+        }
+    }
+
+    private static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    private int deviceCode(int slot) {
+        return chunks[slot / CHUNK_RECORDS].buffer.getInt((slot % CHUNK_RECORDS) * RECORD_BYTES);
+    }
+
+    private int userCode(int slot) {
+        return chunks[slot / CHUNK_RECORDS].buffer.getInt((slot % CHUNK_RECORDS) * RECORD_BYTES + 4);
+    }
+
+    private long borrowedAt(int slot) {
+        return chunks[slot / CHUNK_RECORDS].buffer.getLong((slot % CHUNK_RECORDS) * RECORD_BYTES + 8);
+    }
+
+    private long returnedAt(int slot) {
+        return chunks[slot / CHUNK_RECORDS].buffer.getLong((slot % CHUNK_RECORDS) * RECORD_BYTES + 24);
+    }
+
+    /**
+     * Intern an id, appending it to the sidecar file if it is new. Callers hold the write lock,
+     * so new codes are assigned (and written) in order. The sidecar is forced before any record
+     * referencing the new code can be.
+     */
+    private int internId(String id) {
+        int known = ids.size();
+        int code = ids.intern(id);
+        if (code == known) {
+            try {
+                ByteBuffer line = ByteBuffer.wrap((id + "\n").getBytes(StandardCharsets.UTF_8));
+                while (line.hasRemaining()) {
+                    idsChannel.write(line);
+                }
+                idsChannel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return code;
+    }
+
+    private void forceRecord(int slot) {
+        chunks[slot / CHUNK_RECORDS].buffer.force((slot % CHUNK_RECORDS) * RECORD_BYTES, RECORD_BYTES);
+    }
+
+    private void forceRecords(int from, int to) {
+        for (int chunk = from / CHUNK_RECORDS; chunk <= to / CHUNK_RECORDS; chunk++) {
+            int start = chunk == from / CHUNK_RECORDS ? from % CHUNK_RECORDS : 0;
+            int end = chunk == to / CHUNK_RECORDS ? to % CHUNK_RECORDS : CHUNK_RECORDS - 1;
+            chunks[chunk].buffer.force(start * RECORD_BYTES, (end - start + 1) * RECORD_BYTES);
+        }
+    }
+
+    private void ensureCapacity(int records) {
+        Chunk[] current = chunks;
+        int needed = (records + CHUNK_RECORDS - 1) / CHUNK_RECORDS;
+        if (needed <= current.length) return;
+        Chunk[] grown = Arrays.copyOf(current, needed);
+        try {
+            for (int i = current.length; i < needed; i++) {
+                grown[i] = new Chunk(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * CHUNK_BYTES, CHUNK_BYTES));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunks = grown;
+    }
+
+    /**
+     * One mapped chunk of {@link #CHUNK_RECORDS} records. {@code version} is a sequence lock over
+     * the mutable fields: odd while an in-place update is in progress, bumped again when it is
+     * complete.
+     */
+    private static final class Chunk {
+        final MappedByteBuffer buffer;
+        volatile int version;
+
+        Chunk(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void beginWrite() {
+            version++;
+            VarHandle.storeStoreFence();
+        }
+
+        void endWrite() {
+            version++;
+        }
+    }
+
+    private final class Columns implements LoanColumns {
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public IdDictionary ids() {
+            return ids;
+        }
+
+        @Override
+        public void read(int from, int to, Block block) {
+            int runLength = Math.min(COLUMN_RUN, to - from);
+            if (runLength <= 0) return;
+            int[] device = new int[runLength];
+            int[] user = new int[runLength];
+            long[] borrowedAt = new long[runLength];
+            long[] dueAt = new long[runLength];
+            long[] returnedAt = new long[runLength];
+            Chunk[] dir = chunks;
+            while (from < to) {
+                Chunk chunk = dir[from / CHUNK_RECORDS];
+                int first = from % CHUNK_RECORDS;
+                int n = Math.min(Math.min(runLength, to - from), CHUNK_RECORDS - first);
+                while (true) {
+                    int v = chunk.version;
+                    if ((v & 1) == 0) {
+                        MappedByteBuffer buffer = chunk.buffer;
+                        for (int i = 0, pos = first * RECORD_BYTES; i < n; i++, pos += RECORD_BYTES) {
+                            device[i] = buffer.getInt(pos);
+                            user[i] = buffer.getInt(pos + 4);
+                            borrowedAt[i] = buffer.getLong(pos + 8);
+                            dueAt[i] = buffer.getLong(pos + 16);
+                            returnedAt[i] = buffer.getLong(pos + 24);
+                        }
+                        VarHandle.loadLoadFence();
+                        if (chunk.version == v) break;
+                    }
+                    Thread.onSpinWait();
+                }
+                block.accept(device, user, borrowedAt, dueAt, returnedAt, 0, n);
+                from += n;
+            }
+        }
+    }
+
+    private final class View extends AbstractList<Loan> implements RandomAccess {
+        private final int size;
+        private final SlotHistory.Snapshot snapshot;
+
+        View(int size, SlotHistory.Snapshot snapshot) {
+            this.size = size;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Loan get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            // the current value first: an update it misses has recorded what it replaces
+            Loan current = read(index);
+            SlotHistory.Entry before = history.before(snapshot, index);
+            return before == null ? current : loan(index, before.user(), before.dueAt(), before.returnedAt());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dev.locker.service;
+
+import dev.locker.domain.Loan;
+
+/**
+ * Outcome of one item of a batch: either the resulting loan or the exception the single-item
+ * call would have thrown ({@link ValidationException}, {@link NotFoundException} or
+ * {@link ConflictException}).
+ *
+ * @param loan  the created or updated loan; null on failure
+ * @param error the failure; null on success
+ */
+public record BatchResult(Loan loan, RuntimeException error) {
+    static BatchResult ok(Loan loan) {
+        return new BatchResult(loan, null);
+    }
+
+    static BatchResult failed(RuntimeException error) {
+        return new BatchResult(null, error);
+    }
+}
@@ -0,0 +1,11 @@
+package dev.locker.service;
+
+/**
+ * One borrow of a batch.
+ *
+ * @param deviceId id of the device to borrow
+ * @param userId   id of the user borrowing the device
+ * @param days     number of days to borrow (must be positive)
+ */
+public record BorrowRequest(String deviceId, String userId, Integer days) {
+}
@@ -0,0 +1,67 @@
+package dev.locker.service;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks striped by device id. Operations on the same device always map to the same
+ * lock and are serialized; operations on different devices usually map to different locks and
+ * run in parallel. Operations spanning several devices take their stripes in ascending order,
+ * so they cannot deadlock with each other.
+ */
+final class DeviceLocks {
+    private static final int STRIPES = 256;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    DeviceLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Return the stripe index the given device maps to.
+     *
+     * @param deviceId the device id
+     * @return the stripe index
+     */
+    int stripeOf(String deviceId) {
+        int h = deviceId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Return the lock guarding the given device.
+     *
+     * @param deviceId the device id
+     * @return the lock for that device's stripe
+     */
+    ReentrantLock lockFor(String deviceId) {
+        return locks[stripeOf(deviceId)];
+    }
+
+    /**
+     * Lock the stripes of all given devices, each stripe once, in ascending stripe order.
+     *
+     * @param deviceIds the device ids
+     * @return the locked stripes, to be passed to {@link #unlockAll(int[])}
+     */
+    int[] lockAll(Collection<String> deviceIds) {
+        int[] stripes = deviceIds.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        return stripes;
+    }
+
+    /**
+     * Unlock stripes locked by {@link #lockAll(Collection)}.
+     *
+     * @param stripes the stripes returned by {@link #lockAll(Collection)}
+     */
+    void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package dev.locker.service;
+
+import dev.locker.domain.Device;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory search index over device names and tags.
+ * <p>
+ * Every indexed device gets a document number; the lowercased name and tags are split into all
+ * n-grams of length 1 to 3, and each n-gram keeps the ascending list of documents containing it.
+ * A query term is looked up through its trigrams (or the term itself when shorter), the posting
+ * lists are intersected and the few remaining candidates are verified with {@code contains}, so
+ * a search touches only postings and matches instead of the whole catalog. Tags additionally get
+ * exact postings for tag filters.
+ * <p>
+ * Posting lists are append-only and documents only ever get increasing numbers: a device whose
+ * name or tags change is re-indexed under a new number and its old document is dropped. Readers
+ * therefore never lock; stale postings are skipped during verification. Results come in document
+ * order, which is id order for the devices present at construction followed by later additions.
+ */
+public class DeviceSearchIndex {
+    private static final int GRAM = 3;
+
+    private final Map<String, Integer> docByDevice = new ConcurrentHashMap<>();
+    private final Map<Long, Postings> grams = new ConcurrentHashMap<>();
+    private final Map<String, Postings> tags = new ConcurrentHashMap<>();
+    private volatile Entry[] entries = new Entry[1024];
+    private volatile int size;
+
+    /**
+     * Create an index over the given devices.
+     *
+     * @param devices the existing devices
+     */
+    public DeviceSearchIndex(Collection<Device> devices) {
+        List<Device> sorted = new ArrayList<>(devices);
+        sorted.sort(Comparator.comparing(Device::id));
+        for (Device d : sorted) {
+            index(d);
+        }
+    }
+
+    /**
+     * Index a saved device, replacing any earlier version of it.
+     *
+     * @param device the saved device
+     */
+    public synchronized void index(Device device) {
+        Entry entry = Entry.of(device);
+        Integer doc = docByDevice.get(device.id());
+        Entry[] current = entries;
+        if (doc != null) {
+            Entry previous = current[doc];
+            if (previous.sameText(entry)) {
+                // only counters changed: keep the postings, swap the device
+                current[doc] = entry;
+                entries = current;
+                return;
+            }
+            current[doc] = null;
+        }
+        int next = size;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, next * 2);
+        }
+        current[next] = entry;
+        entries = current;
+        for (long gram : entry.grams()) {
+            grams.computeIfAbsent(gram, g -> new Postings()).add(next);
+        }
+        for (String tag : entry.tags) {
+            tags.computeIfAbsent(tag, t -> new Postings()).add(next);
+        }
+        docByDevice.put(device.id(), next);
+        size = next + 1;
+    }
+
+    /**
+     * Find devices matching every term of {@code query} and carrying every tag in {@code tagFilter}.
+     * A term matches when it is a substring of the device name or of one of its tags; a tag filter
+     * matches tags exactly. Both comparisons ignore case.
+     *
+     * @param query     whitespace separated terms; null or blank matches every device
+     * @param tagFilter tags the device must carry; may be empty
+     * @param offset    number of matches to skip
+     * @param limit     maximum number of devices to return
+     * @return the matching devices in index order
+     */
+    public List<Device> search(String query, Set<String> tagFilter, int offset, int limit) {
+        List<String> terms = terms(query);
+        List<String> required = new ArrayList<>(tagFilter.size());
+        for (String t : tagFilter) {
+            required.add(t.toLowerCase(Locale.ROOT));
+        }
+        List<Device> result = new ArrayList<>();
+        if (limit <= 0) return result;
+
+        List<Postings> lists = new ArrayList<>();
+        for (String term : terms) {
+            for (long gram : lookupGrams(term)) {
+                Postings p = grams.get(gram);
+                if (p == null) return result;
+                lists.add(p);
+            }
+        }
+        for (String tag : required) {
+            Postings p = tags.get(tag);
+            if (p == null) return result;
+            lists.add(p);
+        }
+
+        int end = size;
+        Entry[] snapshot = entries;
+        Cursor[] cursors = new Cursor[lists.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = lists.get(i).cursor();
+        }
+        Arrays.sort(cursors, Comparator.comparingInt(Cursor::length));
+
+        int skipped = 0;
+        int doc = -1;
+        while (true) {
+            doc = cursors.length == 0 ? doc + 1 : cursors[0].nextAtLeast(doc + 1);
+            if (doc < 0 || doc >= end) break;
+            if (!allContain(cursors, doc)) continue;
+            Entry entry = snapshot[doc];
+            if (entry == null || !entry.matches(terms, required)) continue;
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            result.add(entry.device);
+            if (result.size() == limit) break;
+        }
+        return result;
+    }
+
+    private static boolean allContain(Cursor[] cursors, int doc) {
+        for (int i = 1; i < cursors.length; i++) {
+            if (cursors[i].nextAtLeast(doc) != doc) return false;
+        }
+        return true;
+    }
+
+    private static List<String> terms(String query) {
+        if (query == null || query.isBlank()) return List.of();
+        List<String> terms = new ArrayList<>();
+        for (String t : query.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            if (!terms.contains(t)) terms.add(t);
+        }
+        return terms;
+    }
+
+    private static long[] lookupGrams(String term) {
+        if (term.length() <= GRAM) return new long[]{gram(term, 0, term.length())};
+        long[] result = new long[term.length() - GRAM + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = gram(term, i, GRAM);
+        }
+        return Arrays.stream(result).distinct().toArray();
+    }
+
+    /**
+     * Pack the n-gram of {@code length} chars at {@code start} into a long: the length in the top
+     * bits followed by up to three 16-bit chars.
+     */
+    private static long gram(String text, int start, int length) {
+        long key = length;
+        for (int i = 0; i < GRAM; i++) {
+            key = (key << 16) | (i < length ? text.charAt(start + i) : 0);
+        }
+        return key;
+    }
+
+    /**
+     * Indexed text of one device version.
+     */
+    private record Entry(Device device, String name, Set<String> tags) {
+        static Entry of(Device device) {
+            List<String> lowerTags = new ArrayList<>(device.tags().size());
+            for (String t : device.tags()) {
+                lowerTags.add(t.toLowerCase(Locale.ROOT));
+            }
+            return new Entry(device, device.name().toLowerCase(Locale.ROOT), Set.copyOf(lowerTags));
+        }
+
+        boolean sameText(Entry other) {
+            return name.equals(other.name) && tags.equals(other.tags);
+        }
+
+        long[] grams() {
+            int total = 0;
+            total += GRAM * name.length();
+            for (String t : tags) total += GRAM * t.length();
+            long[] result = new long[total];
+            int n = addGrams(name, result, 0);
+            for (String t : tags) n = addGrams(t, result, n);
+            Arrays.sort(result, 0, n);
+            int unique = 0;
+            for (int i = 0; i < n; i++) {
+                if (unique == 0 || result[unique - 1] != result[i]) result[unique++] = result[i];
+            }
+            return Arrays.copyOf(result, unique);
+        }
+
+        boolean matches(List<String> terms, List<String> required) {
+            for (String tag : required) {
+                if (!tags.contains(tag)) return false;
+            }
+            for (String term : terms) {
+                if (!containsTerm(term)) return false;
+            }
+            return true;
+        }
+
+        private boolean containsTerm(String term) {
+            if (name.contains(term)) return true;
+            for (String t : tags) {
+                if (t.contains(term)) return true;
+            }
+            return false;
+        }
+
+        private static int addGrams(String text, long[] out, int n) {
+            for (int i = 0; i < text.length(); i++) {
+                for (int len = 1; len <= GRAM && i + len <= text.length(); len++) {
+                    out[n++] = gram(text, i, len);
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Ascending, append-only list of document numbers. Appends happen under the index lock;
+     * readers take a consistent prefix without locking because the array is published before the
+     * size that covers it.
+     */
+    private static final class Postings {
+        private volatile int[] docs = new int[4];
+        private volatile int size;
+
+        void add(int doc) {
+            int n = size;
+            int[] current = docs;
+            if (n == current.length) {
+                current = Arrays.copyOf(current, n * 2);
+                docs = current;
+            }
+            current[n] = doc;
+            size = n + 1;
+        }
+
+        Cursor cursor() {
+            int n = size;
+            return new Cursor(docs, n);
+        }
+    }
+
+    /**
+     * Forward-only position within a posting list.
+     */
+    private static final class Cursor {
+        private final int[] docs;
+        private final int length;
+        private int pos;
+
+        Cursor(int[] docs, int length) {
+            this.docs = docs;
+            this.length = length;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * Advance to the first document not below {@code target} using a galloping search.
+         *
+         * @param target the smallest acceptable document number
+         * @return that document, or -1 if the list is exhausted
+         */
+        int nextAtLeast(int target) {
+            if (pos >= length) return -1;
+            if (docs[pos] >= target) return docs[pos];
+            int step = 1;
+            int lo = pos;
+            int hi = pos + 1;
+            while (hi < length && docs[hi] < target) {
+                lo = hi;
+                step <<= 1;
+                hi = pos + step;
+            }
+            hi = Math.min(hi, length);
+            int found = Arrays.binarySearch(docs, lo + 1, hi, target);
+            pos = found >= 0 ? found : -found - 1;
+            return pos < length ? docs[pos] : -1;
+        }
+    }
+}
@@ -4,8 +4,8 @@ import dev.locker.domain.Device;
 import dev.locker.repo.DeviceRepository;
 
 import java.util.List;
-import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service for device operations.
@@ -13,14 +13,37 @@ import java.util.stream.Collectors;
 @SuppressWarnings("ClassCanBeRecord")
 public class DeviceService {
     private final DeviceRepository repo;
+    private final DeviceSearchIndex index;
 
     /**
-     * Create a new DeviceService with the given repository.
+     * Create a new DeviceService with the given repository. A search index over the current
+     * devices is built and kept in step with every later {@link DeviceRepository#save(Device)}.
      *
      * @param repo the device repository
      */
     public DeviceService(DeviceRepository repo) {
         this.repo = repo;
+        this.index = new DeviceSearchIndex(repo.findAll());
+        repo.addSaveListener(index::index);
+    }
+
+    /**
+     * Return the version of the device catalog; see {@link DeviceRepository#version()}.
+     *
+     * @return the current catalog version
+     */
+    public long version() {
+        return repo.version();
+    }
+
+    /**
+     * Find a device by id.
+     *
+     * @param id the device id
+     * @return the device, if it exists
+     */
+    public Optional<Device> findById(String id) {
+        return repo.findById(id);
     }
 
     /**
@@ -32,6 +55,26 @@ public class DeviceService {
         return repo.findAll();
     }
 
+    /**
+     * List one page of devices in id order.
+     *
+     * @param after the id of the last device of the previous page; null for the first page
+     * @param limit maximum number of devices to return
+     * @return the devices following {@code after}
+     */
+    public List<Device> page(String after, int limit) {
+        return repo.findPage(after, limit);
+    }
+
+    /**
+     * Iterate over all devices in id order without copying the catalog.
+     *
+     * @return the devices sorted by id
+     */
+    public Iterable<Device> iterateAll() {
+        return repo.iterateAll();
+    }
+
     /**
      * Search devices by name or tags (case-insensitive). Empty query returns all.
      *
@@ -40,9 +83,21 @@ public class DeviceService {
      */
     public List<Device> search(String query) {
         if (query == null || query.trim().isEmpty()) return listAll();
-        String lower = query.toLowerCase(Locale.ROOT);
-        return repo.findAll().stream().filter(d -> d.name().toLowerCase(Locale.ROOT).contains(lower)
-                        || d.tags().stream().anyMatch(t -> t.toLowerCase(Locale.ROOT).contains(lower)))
-                .collect(Collectors.toList());
+        return search(query, Set.of(), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search devices by name or tags (case-insensitive). Every whitespace separated term of the
+     * query must occur in the name or in one of the tags, and every tag of {@code tags} must be
+     * carried exactly.
+     *
+     * @param query  the terms to search for; null or blank matches every device
+     * @param tags   tags the devices must carry; may be empty
+     * @param offset number of matches to skip
+     * @param limit  maximum number of devices to return
+     * @return the matching devices, in a stable order
+     */
+    public List<Device> search(String query, Set<String> tags, int offset, int limit) {
+        return index.search(query, tags, offset, limit);
     }
 }
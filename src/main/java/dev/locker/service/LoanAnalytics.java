@@ -0,0 +1,336 @@
+package dev.locker.service;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.IdDictionary;
+import dev.locker.repo.LoanColumns;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Analytical scans over the columns of the loan store.
+ * <p>
+ * Every loan is one row of the store's {@link LoanColumns}: device and user codes and borrowedAt,
+ * dueAt and returnedAt as epoch nanoseconds. Statistics are tight loops over these arrays, so no
+ * {@link Loan} or {@link Instant} is touched, and a scan is split into ranges of rows that run on
+ * the common fork/join pool; partial results of the ranges are then merged.
+ * <p>
+ * The analytics keep no copy of the history and need no listener: every scan reads the store's
+ * columns as they are, so it sees the rows that existed when it started, with returns weakly
+ * consistent.
+ */
+public class LoanAnalytics {
+    // ranges are whole multiples of the file store's segment size
+    private static final int RANGE_ROWS = 4096;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_HOUR = 3600 * NANOS_PER_SECOND;
+    private static final long NANOS_PER_DAY = 24 * NANOS_PER_HOUR;
+
+    private final LoanColumns columns;
+
+    /**
+     * Device utilization within a window.
+     *
+     * @param deviceId    the device id
+     * @param utilization the fraction of the window the device was on loan, between 0 and 1
+     * @param loans       the number of loans overlapping the window
+     */
+    public record DeviceUtilization(String deviceId, double utilization, long loans) {
+    }
+
+    /**
+     * Average duration of the returned loans borrowed within a window.
+     *
+     * @param loans        the number of returned loans
+     * @param averageHours their mean duration in hours; 0 when there are none
+     */
+    public record LoanDurations(long loans, double averageHours) {
+    }
+
+    /**
+     * On-time returns of one user among the loans borrowed within a window.
+     *
+     * @param userId   the user id
+     * @param returned the number of returned loans
+     * @param onTime   how many of them were returned by their due date
+     * @param rate     {@code onTime / returned}
+     */
+    public record OnTimeRate(String userId, long returned, long onTime, double rate) {
+    }
+
+    /**
+     * Borrows within a window by hour of day.
+     *
+     * @param from    the inclusive start of the window
+     * @param to      the exclusive end of the window
+     * @param borrows 24 counts; element {@code h} counts borrows between h:00 and h:59 UTC
+     */
+    public record HourlyBorrows(Instant from, Instant to, long[] borrows) {
+    }
+
+    /**
+     * Create analytics over the given columns.
+     *
+     * @param columns the columns of the loan store, see {@link dev.locker.repo.LoanRepository#columns()}
+     */
+    public LoanAnalytics(LoanColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Return the number of rows, i.e. of loans in the store.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * Compute the share of the window {@code [from, to)} each device spent on loan, most used
+     * first. Open loans count as ongoing until {@code to}.
+     *
+     * @param from  the inclusive start of the window
+     * @param to    the exclusive end of the window
+     * @param limit maximum number of devices to return
+     * @return devices with at least one loan overlapping the window
+     */
+    public List<DeviceUtilization> utilization(Instant from, Instant to, int limit) {
+        long start = toNanos(from);
+        long end = toNanos(to);
+        IdDictionary ids = columns.ids();
+        int codeCount = ids.size();
+        long[][] result = scan(() -> new long[2][codeCount], (device, user, borrowedAt, dueAt, returnedAt, first, last, acc) -> {
+            long[] busy = acc[0];
+            long[] loans = acc[1];
+            for (int i = first; i < last; i++) {
+                // minus one wraps NOT_RETURNED to Long.MAX_VALUE, so open loans run until the end
+                long overlap = Math.min(returnedAt[i] - 1, end - 1) + 1 - Math.max(borrowedAt[i], start);
+                int d = device[i];
+                if (overlap > 0 && d < codeCount) {
+                    busy[d] += overlap;
+                    loans[d]++;
+                }
+            }
+        }, (a, b) -> {
+            addInto(a[0], b[0]);
+            addInto(a[1], b[1]);
+            return a;
+        });
+        double window = Math.max(1, (double) end - start);
+        List<DeviceUtilization> list = new ArrayList<>();
+        for (int d = 0; d < codeCount; d++) {
+            if (result[1][d] > 0) {
+                list.add(new DeviceUtilization(ids.idOf(d), Math.min(1.0, result[0][d] / window), result[1][d]));
+            }
+        }
+        list.sort(Comparator.comparingDouble(DeviceUtilization::utilization).reversed()
+                .thenComparing(DeviceUtilization::deviceId));
+        return list.subList(0, Math.min(Math.max(0, limit), list.size()));
+    }
+
+    /**
+     * Compute the average duration of the returned loans borrowed within {@code [from, to)}.
+     *
+     * @param from the inclusive start of the window
+     * @param to   the exclusive end of the window
+     * @return the number of such loans and their mean duration
+     */
+    public LoanDurations durations(Instant from, Instant to) {
+        long start = toNanos(from);
+        long end = toNanos(to);
+        // durations are summed in a long and moved to the double total before the long would
+        // overflow, which 4096 loans of a month or more already do
+        double[] result = scan(() -> new double[2], (device, user, borrowedAt, dueAt, returnedAt, first, last, acc) -> {
+            long total = 0;
+            long count = 0;
+            for (int i = first; i < last; i++) {
+                long b = borrowedAt[i];
+                long r = returnedAt[i];
+                if (b >= start && b < end && r != LoanColumns.NOT_RETURNED) {
+                    long duration = r - b;
+                    long sum = total + duration;
+                    if (((total ^ sum) & (duration ^ sum)) < 0) {
+                        acc[0] += total;
+                        sum = duration;
+                    }
+                    total = sum;
+                    count++;
+                }
+            }
+            acc[0] += total;
+            acc[1] += count;
+        }, LoanAnalytics::addInto);
+        double average = result[1] == 0 ? 0 : result[0] / result[1] / NANOS_PER_HOUR;
+        return new LoanDurations((long) result[1], average);
+    }
+
+    /**
+     * Compute per user how many returned loans borrowed within {@code [from, to)} came back by
+     * their due date, lowest rate first.
+     *
+     * @param from   the inclusive start of the window
+     * @param to     the exclusive end of the window
+     * @param userId only this user; null for all users
+     * @param limit  maximum number of users to return
+     * @return users with at least one returned loan in the window
+     */
+    public List<OnTimeRate> onTimeRates(Instant from, Instant to, String userId, int limit) {
+        long start = toNanos(from);
+        long end = toNanos(to);
+        IdDictionary ids = columns.ids();
+        int codeCount = ids.size();
+        int only = userId == null ? -1 : ids.codeOf(userId);
+        if (userId != null && only < 0) return List.of();
+        // int counters (a scan has fewer than 2^31 rows) keep the scattered increments cache-friendly
+        int[][] result = scan(() -> new int[2][codeCount], (device, user, borrowedAt, dueAt, returnedAt, first, last, acc) -> {
+            int[] returned = acc[0];
+            int[] onTime = acc[1];
+            for (int i = first; i < last; i++) {
+                long b = borrowedAt[i];
+                long r = returnedAt[i];
+                int u = user[i];
+                if (b >= start && b < end && r != LoanColumns.NOT_RETURNED && u < codeCount) {
+                    returned[u]++;
+                    if (r <= dueAt[i]) onTime[u]++;
+                }
+            }
+        }, (a, b) -> {
+            addInto(a[0], b[0]);
+            addInto(a[1], b[1]);
+            return a;
+        });
+        List<OnTimeRate> list = new ArrayList<>();
+        for (int u = 0; u < codeCount; u++) {
+            if (result[0][u] > 0 && (only < 0 || u == only)) {
+                list.add(new OnTimeRate(ids.idOf(u), result[0][u], result[1][u], (double) result[1][u] / result[0][u]));
+            }
+        }
+        list.sort(Comparator.comparingDouble(OnTimeRate::rate).thenComparing(OnTimeRate::userId));
+        return list.subList(0, Math.min(Math.max(0, limit), list.size()));
+    }
+
+    /**
+     * Count the borrows within {@code [from, to)} by UTC hour of day.
+     *
+     * @param from the inclusive start of the window
+     * @param to   the exclusive end of the window
+     * @return the 24 hourly counts
+     */
+    public HourlyBorrows hourly(Instant from, Instant to) {
+        long start = toNanos(from);
+        long end = toNanos(to);
+        long[] result = scan(() -> new long[24], (device, user, borrowedAt, dueAt, returnedAt, first, last, acc) -> {
+            for (int i = first; i < last; i++) {
+                long b = borrowedAt[i];
+                if (b >= start && b < end) {
+                    acc[(int) (Math.floorMod(b, NANOS_PER_DAY) / NANOS_PER_HOUR)]++;
+                }
+            }
+        }, LoanAnalytics::addInto);
+        return new HourlyBorrows(from, to, result);
+    }
+
+    /**
+     * Run a scan over all rows present now: every range of rows gets a fresh accumulator, the
+     * kernel folds each run of the range into it, and the accumulators of the ranges are merged
+     * pairwise.
+     */
+    private <A> A scan(Supplier<A> accumulator, Kernel<A> kernel, BinaryOperator<A> merge) {
+        int rows = columns.size();
+        int units = (rows + RANGE_ROWS - 1) / RANGE_ROWS;
+        // a few ranges per core; per-device accumulators make many small ranges expensive
+        int leaves = Math.max(1, ForkJoinPool.getCommonPoolParallelism() * 4);
+        int grain = Math.max(1, (units + leaves - 1) / leaves);
+        return ForkJoinPool.commonPool().invoke(new ScanTask<>(columns, rows, 0, units, grain, accumulator, kernel, merge));
+    }
+
+    /**
+     * Convert a window bound to epoch nanoseconds, saturating outside their range.
+     */
+    private static long toNanos(Instant instant) {
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+        } catch (ArithmeticException e) {
+            return instant.getEpochSecond() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    private static long[] addInto(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+        return target;
+    }
+
+    private static int[] addInto(int[] target, int[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+        return target;
+    }
+
+    private static double[] addInto(double[] target, double[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+        return target;
+    }
+
+    /**
+     * Folds the rows {@code [first, last)} of a run of columns into an accumulator.
+     */
+    @FunctionalInterface
+    private interface Kernel<A> {
+        void scan(int[] device, int[] user, long[] borrowedAt, long[] dueAt, long[] returnedAt, int first, int last, A accumulator);
+    }
+
+    private static final class ScanTask<A> extends RecursiveTask<A> {
+        private final LoanColumns columns;
+        private final int rows;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final Supplier<A> accumulator;
+        private final Kernel<A> kernel;
+        private final BinaryOperator<A> merge;
+
+        /**
+         * A scan of the ranges {@code [from, to)}, each of {@link #RANGE_ROWS} rows, of the
+         * first {@code rows} rows.
+         */
+        ScanTask(LoanColumns columns, int rows, int from, int to, int grain,
+                 Supplier<A> accumulator, Kernel<A> kernel, BinaryOperator<A> merge) {
+            this.columns = columns;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.accumulator = accumulator;
+            this.kernel = kernel;
+            this.merge = merge;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                ScanTask<A> left = new ScanTask<>(columns, rows, from, mid, grain, accumulator, kernel, merge);
+                left.fork();
+                A right = new ScanTask<>(columns, rows, mid, to, grain, accumulator, kernel, merge).compute();
+                return merge.apply(left.join(), right);
+            }
+            A acc = accumulator.get();
+            columns.read(from * RANGE_ROWS, (int) Math.min(rows, (long) to * RANGE_ROWS),
+                    (device, user, borrowedAt, dueAt, returnedAt, first, last) ->
+                            kernel.scan(device, user, borrowedAt, dueAt, returnedAt, first, last, acc));
+            return acc;
+        }
+    }
+}
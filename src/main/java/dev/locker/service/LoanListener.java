@@ -0,0 +1,26 @@
+package dev.locker.service;
+
+import dev.locker.domain.Loan;
+
+/**
+ * Callback for loan lifecycle events published by {@link LoanService}. Listeners are invoked
+ * synchronously while the device is locked, so events of one device arrive in order; they must
+ * be fast and must not call back into the service.
+ */
+public interface LoanListener {
+    /**
+     * Called after a loan was created.
+     *
+     * @param loan the new loan
+     */
+    default void onBorrowed(Loan loan) {
+    }
+
+    /**
+     * Called after a loan was closed.
+     *
+     * @param loan the loan with returnedAt set
+     */
+    default void onReturned(Loan loan) {
+    }
+}
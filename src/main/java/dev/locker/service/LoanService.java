@@ -2,7 +2,6 @@ package dev.locker.service;
 
 import dev.locker.domain.Device;
 import dev.locker.domain.Loan;
-import dev.locker.domain.User;
 import dev.locker.repo.DeviceRepository;
 import dev.locker.repo.LoanRepository;
 import dev.locker.repo.UserRepository;
@@ -11,17 +10,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Handles borrowing and returning devices.
+ * <p>
+ * Borrow and return are check-then-act sequences over the loan and device repositories. They
+ * run under a per-device lock (striped by device id), so two requests for the same device are
+ * serialized while requests for unrelated devices proceed in parallel.
  */
 @SuppressWarnings("ClassCanBeRecord")
 public class LoanService {
+    /**
+     * Longest loan in days. Loan stores keep timestamps as epoch nanoseconds, which end in 2262;
+     * ten years keeps every due date far inside that range.
+     */
+    public static final int MAX_DAYS = 3650;
+
     private static final Logger logger = LoggerFactory.getLogger(LoanService.class);
     private final DeviceRepository deviceRepo;
     private final UserRepository userRepo;
     private final LoanRepository loanRepo;
+    private final DeviceLocks locks = new DeviceLocks();
+    private final List<LoanListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Create a new LoanService with the given repositories.
@@ -36,33 +53,116 @@ public class LoanService {
         this.loanRepo = loanRepo;
     }
 
+    /**
+     * Register a listener notified of every borrow and return.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(LoanListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Return all loans (historic and open) of a user, in the order they were made.
+     *
+     * @param userId id of the user
+     * @return the user's loans
+     * @throws NotFoundException if the user does not exist
+     */
+    public List<Loan> loansOf(String userId) {
+        userRepo.findById(userId).orElseThrow(() -> new NotFoundException("User not found"));
+        return loanRepo.findByUser(userId);
+    }
+
     /**
      * Borrow a device for given days. Returns the created Loan.
-     * Validates existence, non-negative days, and device not currently borrowed.
+     * Validates existence, days between 1 and {@link #MAX_DAYS}, and device not currently borrowed.
      *
      * @param deviceId id of the device to borrow
      * @param userId   id of the user borrowing the device
-     * @param days     number of days to borrow (must be positive)
+     * @param days     number of days to borrow (1 to {@link #MAX_DAYS})
      * @return the created Loan record
      */
     public Loan borrow(String deviceId, String userId, Integer days) {
-        if (deviceId == null || deviceId.isBlank()) throw new ValidationException("deviceId is required");
-        if (userId == null || userId.isBlank()) throw new ValidationException("userId is required");
-        if (days == null || days <= 0) throw new ValidationException("days must be positive");
+        validateBorrow(deviceId, userId, days);
 
-        Device device = deviceRepo.findById(deviceId).orElseThrow(() -> new NotFoundException("Device not found"));
-        User user = userRepo.findById(userId).orElseThrow(() -> new NotFoundException("User not found"));
+        ReentrantLock lock = locks.lockFor(deviceId);
+        lock.lock();
+        try {
+            Device device = deviceRepo.findById(deviceId).orElseThrow(() -> new NotFoundException("Device not found"));
+            userRepo.findById(userId).orElseThrow(() -> new NotFoundException("User not found"));
+            Optional<Loan> open = loanRepo.findOpenLoanByDevice(deviceId);
+            if (open.isPresent()) throw new ConflictException("Device already borrowed");
 
-        Optional<Loan> open = loanRepo.findOpenLoanByDevice(deviceId);
-        if (open.isPresent()) throw new ConflictException("Device already borrowed");
+            Instant now = DateUtil.nowUTC();
+            Instant due = DateUtil.plusDays(now, days);
+            Loan loan = new Loan(deviceId, userId, now, due, null);
+            loanRepo.save(loan);
+            deviceRepo.save(device.incrementTimesBorrowed());
+            for (LoanListener l : listeners) l.onBorrowed(loan);
+            logger.debug("Device {} borrowed by {} until {}", deviceId, userId, due);
+            return loan;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Borrow several devices at once. Every item is checked exactly like {@link #borrow} would
+     * check it, but all involved devices are locked together and the successful loans and device
+     * updates are persisted in one pass. A device that appears twice is borrowed by the first
+     * item; later items for it fail with a conflict.
+     *
+     * @param requests the borrows, in order
+     * @return one result per request, in request order
+     */
+    public List<BatchResult> borrowBatch(List<BorrowRequest> requests) {
+        BatchResult[] results = new BatchResult[requests.size()];
+        List<String> deviceIds = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            BorrowRequest r = requests.get(i);
+            try {
+                validateBorrow(r.deviceId(), r.userId(), r.days());
+                deviceIds.add(r.deviceId());
+            } catch (ValidationException e) {
+                results[i] = BatchResult.failed(e);
+            }
+        }
 
-        Instant now = DateUtil.nowUTC();
-        Instant due = DateUtil.plusDays(now, days);
-        Loan loan = new Loan(deviceId, userId, now, due, null);
-        loanRepo.save(loan);
-        deviceRepo.save(device.incrementTimesBorrowed());
-        logger.info("Device {} borrowed by {} (user: {}) until {}", deviceId, userId, user.name(), due);
-        return loan;
+        int[] stripes = locks.lockAll(deviceIds);
+        try {
+            Instant now = DateUtil.nowUTC();
+            Set<String> borrowed = new HashSet<>();
+            List<Loan> loans = new ArrayList<>();
+            List<Device> devices = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                if (results[i] != null) continue;
+                BorrowRequest r = requests.get(i);
+                try {
+                    Device device = deviceRepo.findById(r.deviceId()).orElseThrow(() -> new NotFoundException("Device not found"));
+                    userRepo.findById(r.userId()).orElseThrow(() -> new NotFoundException("User not found"));
+                    if (borrowed.contains(r.deviceId()) || loanRepo.findOpenLoanByDevice(r.deviceId()).isPresent()) {
+                        throw new ConflictException("Device already borrowed");
+                    }
+                    Loan loan = new Loan(r.deviceId(), r.userId(), now, DateUtil.plusDays(now, r.days()), null);
+                    borrowed.add(r.deviceId());
+                    loans.add(loan);
+                    devices.add(device.incrementTimesBorrowed());
+                    results[i] = BatchResult.ok(loan);
+                } catch (NotFoundException | ConflictException e) {
+                    results[i] = BatchResult.failed(e);
+                }
+            }
+            loanRepo.saveAll(loans);
+            deviceRepo.saveAll(devices);
+            for (Loan loan : loans) {
+                for (LoanListener l : listeners) l.onBorrowed(loan);
+            }
+            logger.debug("Batch borrowed {} of {} devices", loans.size(), requests.size());
+            return List.of(results);
+        } finally {
+            locks.unlockAll(stripes);
+        }
     }
 
     /**
@@ -73,10 +173,72 @@ public class LoanService {
      */
     public Loan returnDevice(String deviceId) {
         if (deviceId == null || deviceId.isBlank()) throw new ValidationException("deviceId is required");
-        Loan open = loanRepo.findOpenLoanByDevice(deviceId).orElseThrow(() -> new NotFoundException("Open loan not found for device"));
-        Loan updated = open.withReturnedAt(DateUtil.nowUTC());
-        loanRepo.update(updated);
-        logger.info("Device {} returned", deviceId);
-        return updated;
+        ReentrantLock lock = locks.lockFor(deviceId);
+        lock.lock();
+        try {
+            Loan open = loanRepo.findOpenLoanByDevice(deviceId).orElseThrow(() -> new NotFoundException("Open loan not found for device"));
+            Loan updated = open.withReturnedAt(DateUtil.nowUTC());
+            loanRepo.update(updated);
+            for (LoanListener l : listeners) l.onReturned(updated);
+            logger.debug("Device {} returned", deviceId);
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return several devices at once, with the same checks as {@link #returnDevice(String)} per
+     * item but one lock acquisition and one persistence pass for the whole batch.
+     *
+     * @param deviceIds ids of the devices to return, in order
+     * @return one result per device id, in order
+     */
+    public List<BatchResult> returnBatch(List<String> deviceIds) {
+        BatchResult[] results = new BatchResult[deviceIds.size()];
+        List<String> valid = new ArrayList<>();
+        for (int i = 0; i < deviceIds.size(); i++) {
+            String deviceId = deviceIds.get(i);
+            if (deviceId == null || deviceId.isBlank()) {
+                results[i] = BatchResult.failed(new ValidationException("deviceId is required"));
+            } else {
+                valid.add(deviceId);
+            }
+        }
+
+        int[] stripes = locks.lockAll(valid);
+        try {
+            Instant now = DateUtil.nowUTC();
+            Set<String> returned = new HashSet<>();
+            List<Loan> updates = new ArrayList<>();
+            for (int i = 0; i < deviceIds.size(); i++) {
+                if (results[i] != null) continue;
+                String deviceId = deviceIds.get(i);
+                Optional<Loan> open = returned.contains(deviceId) ? Optional.empty() : loanRepo.findOpenLoanByDevice(deviceId);
+                if (open.isEmpty()) {
+                    results[i] = BatchResult.failed(new NotFoundException("Open loan not found for device"));
+                    continue;
+                }
+                Loan updated = open.get().withReturnedAt(now);
+                returned.add(deviceId);
+                updates.add(updated);
+                results[i] = BatchResult.ok(updated);
+            }
+            loanRepo.updateAll(updates);
+            for (Loan loan : updates) {
+                for (LoanListener l : listeners) l.onReturned(loan);
+            }
+            logger.debug("Batch returned {} of {} devices", updates.size(), deviceIds.size());
+            return List.of(results);
+        } finally {
+            locks.unlockAll(stripes);
+        }
+    }
+
+    private static void validateBorrow(String deviceId, String userId, Integer days) {
+        if (deviceId == null || deviceId.isBlank()) throw new ValidationException("deviceId is required");
+        if (userId == null || userId.isBlank()) throw new ValidationException("userId is required");
+        if (days == null || days <= 0) throw new ValidationException("days must be positive");
+        if (days > MAX_DAYS) throw new ValidationException("days must be at most " + MAX_DAYS);
     }
 }
@@ -0,0 +1,91 @@
+package dev.locker.service;
+
+import dev.locker.domain.Loan;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Open loans ordered by due date.
+ * <p>
+ * Kept current through {@link LoanListener}: borrows add an entry, returns remove it. Listing the
+ * loans due before an instant walks the head of the map, so it costs O(overdue loans) no matter
+ * how long the loan history is. A device has at most one open loan, so returns are matched by
+ * device id; this keeps the index correct for stores that round timestamps.
+ */
+public class OverdueIndex implements LoanListener {
+    private final NavigableMap<Key, Loan> open = new ConcurrentSkipListMap<>();
+    private final Map<String, Key> byDevice = new ConcurrentHashMap<>();
+
+    /**
+     * Create an index seeded with the open loans among the given ones.
+     *
+     * @param history the existing loans
+     */
+    public OverdueIndex(Iterable<Loan> history) {
+        for (Loan loan : history) {
+            if (loan.returnedAt() == null) onBorrowed(loan);
+        }
+    }
+
+    @Override
+    public void onBorrowed(Loan loan) {
+        Key key = Key.of(loan);
+        Key previous = byDevice.put(loan.deviceId(), key);
+        if (previous != null) open.remove(previous);
+        open.put(key, loan);
+    }
+
+    @Override
+    public void onReturned(Loan loan) {
+        Key key = byDevice.remove(loan.deviceId());
+        if (key != null) open.remove(key);
+    }
+
+    /**
+     * List open loans with {@code dueAt} strictly before {@code cutoff}, most overdue first.
+     *
+     * @param cutoff the exclusive due-date bound
+     * @param userId only return loans of this user; null for all users
+     * @param limit  maximum number of loans to return
+     * @return the matching open loans ordered by due date
+     */
+    public List<Loan> dueBefore(Instant cutoff, String userId, int limit) {
+        List<Loan> result = new ArrayList<>();
+        if (limit <= 0) return result;
+        for (Loan loan : open.headMap(new Key(cutoff, ""), false).values()) {
+            if (userId != null && !userId.equals(loan.userId())) continue;
+            result.add(loan);
+            if (result.size() == limit) break;
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of open loans.
+     *
+     * @return the number of open loans
+     */
+    public int openCount() {
+        return byDevice.size();
+    }
+
+    private record Key(Instant dueAt, String deviceId) implements Comparable<Key> {
+        private static final Comparator<Key> ORDER = Comparator.comparing(Key::dueAt).thenComparing(Key::deviceId);
+
+        static Key of(Loan loan) {
+            return new Key(loan.dueAt(), loan.deviceId());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package dev.locker.service;
+
+import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
+import dev.locker.repo.IdDictionary;
+import dev.locker.repo.LoanColumns;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incrementally maintained borrow counts per device, bucketed by UTC day.
+ * <p>
+ * Every borrow is recorded in the bucket of its day. Counting the borrows since an instant sums
+ * the sizes of the buckets after that instant's day and counts exactly within the first, partial
+ * day, so the cost depends on the window length and the number of devices, not on the size of
+ * the loan history.
+ * <p>
+ * Only the buckets needed for the longest window usually queried are kept: the index retains
+ * every borrow within {@code retention} of the latest borrow it has seen and drops older days.
+ * Counts since an instant before the retained days are computed by a scan of the loan store's
+ * columns instead, so every count is exact and only such windows pay for the history.
+ */
+public class PopularityIndex implements LoanListener {
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+    private final LoanColumns history;
+    private final NavigableMap<Long, Map<String, BorrowTimes>> days = new ConcurrentSkipListMap<>();
+    private final AtomicLong borrows = new AtomicLong();
+    // whole days to keep before the day of the latest borrow, including the partial first day
+    private final long retainedDays;
+    private volatile long latestDay = Long.MIN_VALUE;
+
+    /**
+     * Create an index seeded from the columns of the loan store. The seed is one pass over the
+     * primitive columns; only the borrows within the retention are kept. The columns are scanned
+     * again for windows starting before the retained days, so they must be the store the borrows
+     * reported to {@link #onBorrowed(Loan)} are saved to.
+     *
+     * @param history   the columns of the loan store
+     * @param retention the longest window answered from the index
+     */
+    public PopularityIndex(LoanColumns history, Duration retention) {
+        this.history = history;
+        this.retainedDays = Math.ceilDiv(retention.toNanos(), NANOS_PER_DAY) + 1;
+        IdDictionary ids = history.ids();
+        history.read(0, history.size(), (device, user, borrowedAt, dueAt, returnedAt, start, end) -> {
+            for (int i = start; i < end; i++) {
+                record(ids.idOf(device[i]), borrowedAt[i]);
+            }
+        });
+    }
+
+    @Override
+    public void onBorrowed(Loan loan) {
+        record(loan.deviceId(), epochNanos(loan.borrowedAt()));
+    }
+
+    private void record(String deviceId, long at) {
+        long day = Math.floorDiv(at, NANOS_PER_DAY);
+        // a borrow already outside the retention only counts for the version
+        if (retains(day)) {
+            days.computeIfAbsent(day, d -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(deviceId, id -> new BorrowTimes())
+                    .add(at);
+        }
+        borrows.incrementAndGet();
+        if (day > latestDay) advance(day);
+    }
+
+    private boolean retains(long day) {
+        return day + retainedDays >= latestDay;
+    }
+
+    private synchronized void advance(long day) {
+        if (day <= latestDay) return;
+        latestDay = day;
+        days.headMap(day - retainedDays).clear();
+    }
+
+    /**
+     * Return the number of borrows recorded so far. It only grows, after a borrow has become
+     * visible to {@link #countsSince(Instant)}, so it serves as the version of the index.
+     *
+     * @return the recorded borrow count
+     */
+    public long version() {
+        return borrows.get();
+    }
+
+    /**
+     * Count borrows per device with {@code borrowedAt >= since}. Starts before the retained days
+     * are answered by a scan of the loan columns.
+     *
+     * @param since the inclusive lower bound
+     * @return borrow counts keyed by device id; devices without borrows are absent
+     */
+    public Map<String, Long> countsSince(Instant since) {
+        long start = epochNanos(since);
+        long startDay = Math.floorDiv(start, NANOS_PER_DAY);
+        if (!retains(startDay)) return scan(start);
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, BorrowTimes> first = days.get(startDay);
+        if (first != null) {
+            first.forEach((id, times) -> {
+                long n = times.countAtOrAfter(start);
+                if (n > 0) counts.merge(id, n, Long::sum);
+            });
+        }
+        for (Map<String, BorrowTimes> bucket : days.tailMap(startDay, false).values()) {
+            bucket.forEach((id, times) -> counts.merge(id, (long) times.size(), Long::sum));
+        }
+        // days are only dropped from the front: if the first day is still retained, none was
+        // dropped while counting
+        return retains(startDay) ? counts : scan(start);
+    }
+
+    /**
+     * Count borrows per device with {@code borrowedAt >= start} over all rows of the columns.
+     */
+    private Map<String, Long> scan(long start) {
+        IdDictionary ids = history.ids();
+        int codeCount = ids.size();
+        long[] perCode = new long[codeCount];
+        history.read(0, history.size(), (device, user, borrowedAt, dueAt, returnedAt, first, last) -> {
+            for (int i = first; i < last; i++) {
+                int d = device[i];
+                if (borrowedAt[i] >= start && d < codeCount) perCode[d]++;
+            }
+        });
+        Map<String, Long> counts = new HashMap<>();
+        for (int d = 0; d < codeCount; d++) {
+            if (perCode[d] > 0) counts.put(ids.idOf(d), perCode[d]);
+        }
+        return counts;
+    }
+
+    /**
+     * Return the top {@code limit} devices by borrow count since {@code since}, highest first.
+     * Ties keep the order of {@code devices}, exactly like a stable sort of that list would.
+     *
+     * @param devices all devices, in tie-breaking order
+     * @param since   the inclusive lower bound
+     * @param limit   maximum number of entries
+     * @return device/count entries sorted by count descending
+     */
+    public List<Map.Entry<Device, Long>> top(List<Device> devices, Instant since, int limit) {
+        if (limit <= 0) return List.of();
+        Map<String, Long> counts = countsSince(since);
+        if (counts.isEmpty()) return List.of();
+        // min-heap on (count, -position) so the weakest candidate is evicted first
+        Comparator<Ranked> rank = Comparator.comparingLong(Ranked::count)
+                .thenComparing(Comparator.comparingInt(Ranked::position).reversed());
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(rank);
+        for (int i = 0; i < devices.size(); i++) {
+            Device d = devices.get(i);
+            Long count = counts.get(d.id());
+            if (count == null) continue;
+            heap.add(new Ranked(d, count, i));
+            if (heap.size() > limit) heap.poll();
+        }
+        List<Ranked> ranked = new ArrayList<>(heap);
+        ranked.sort(rank.reversed());
+        List<Map.Entry<Device, Long>> result = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            result.add(Map.entry(r.device(), r.count()));
+        }
+        return result;
+    }
+
+    private static long epochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    private record Ranked(Device device, long count, int position) {
+    }
+
+    /**
+     * Borrow timestamps of one device within one day.
+     */
+    private static final class BorrowTimes {
+        private long[] times = new long[4];
+        private int size;
+
+        synchronized void add(long at) {
+            if (size == times.length) times = Arrays.copyOf(times, size * 2);
+            times[size++] = at;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long countAtOrAfter(long start) {
+            long n = 0;
+            for (int i = 0; i < size; i++) {
+                if (times[i] >= start) n++;
+            }
+            return n;
+        }
+    }
+}
@@ -6,49 +6,141 @@ import dev.locker.repo.DeviceRepository;
 import dev.locker.repo.LoanRepository;
 import dev.locker.util.DateUtil;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Service that provides simple statistics.
  */
 @SuppressWarnings("ClassCanBeRecord")
 public class StatsService {
+    /**
+     * Window of {@link #popularSince(Instant, int)} when no start is given, in days; also the
+     * retention of the popularity index.
+     */
+    public static final int POPULAR_DAYS = 30;
+
     private final DeviceRepository deviceRepo;
     private final LoanRepository loanRepo;
+    private final PopularityIndex popularity;
+    private final OverdueIndex overdue;
+    private final LoanAnalytics analytics;
 
     /**
-     * Create a new StatsService with the given repositories.
+     * Create a new StatsService with the given repositories. The popularity and overdue indexes
+     * are built from the current loans and do not see later borrows or returns; use
+     * {@link #StatsService(DeviceRepository, LoanRepository, PopularityIndex, OverdueIndex, LoanAnalytics)}
+     * with indexes registered as {@link LoanListener} to keep them current.
      *
      * @param deviceRepo the device repository
      * @param loanRepo   the loan repository
      */
     public StatsService(DeviceRepository deviceRepo, LoanRepository loanRepo) {
+        this(deviceRepo, loanRepo, new PopularityIndex(loanRepo.columns(), Duration.ofDays(POPULAR_DAYS)),
+                new OverdueIndex(loanRepo.findOpenLoans()), new LoanAnalytics(loanRepo.columns()));
+    }
+
+    /**
+     * Create a new StatsService with the given repositories and indexes.
+     *
+     * @param deviceRepo the device repository
+     * @param loanRepo   the loan repository
+     * @param popularity the popularity index answering {@link #popularSince(Instant, int)}
+     * @param overdue    the overdue index answering {@link #overdue(int, String, int)}
+     * @param analytics  the scans over the loan columns answering the windowed statistics
+     */
+    public StatsService(DeviceRepository deviceRepo, LoanRepository loanRepo, PopularityIndex popularity,
+                        OverdueIndex overdue, LoanAnalytics analytics) {
         this.deviceRepo = deviceRepo;
         this.loanRepo = loanRepo;
+        this.popularity = popularity;
+        this.overdue = overdue;
+        this.analytics = analytics;
     }
 
     /**
-     * Return top N devices by borrow count since `since` (if null uses last 30 days).
+     * Return a version covering the data {@link #popularSince(Instant, int)} is computed from: it
+     * increases with every device save and every borrow seen by the popularity index. For a
+     * fixed {@code since}, equal versions give equal results.
+     *
+     * @return the current version of the popularity data
+     */
+    public long popularVersion() {
+        return deviceRepo.version() + popularity.version();
+    }
+
+    /**
+     * Return top N devices by borrow count since `since` (if null uses last 30 days). Starts
+     * older than {@link #POPULAR_DAYS} days scan the loan history instead of the popularity index.
      *
      * @param since the starting instant to consider (inclusive); if null uses 30 days ago
      * @param limit maximum number of entries to return (non-negative)
      * @return list of device/count entries sorted by count descending
      */
     public List<Map.Entry<Device, Long>> popularSince(Instant since, int limit) {
-        Instant start = since == null ? DateUtil.plusDays(DateUtil.nowUTC(), -30) : since;
-        Map<String, Long> counts = loanRepo.findAll().stream()
-                .filter(l -> !l.borrowedAt().isBefore(start))
-                .collect(Collectors.groupingBy(Loan::deviceId, Collectors.counting()));
-
-        return deviceRepo.findAll().stream()
-                .filter(d -> counts.containsKey(d.id()))
-                .map(d -> Map.entry(d, counts.get(d.id())))
-                .sorted(Comparator.comparingLong(e -> -e.getValue()))
-                .limit(Math.max(0, limit))
-                .collect(Collectors.toList());
+        Instant start = since == null ? DateUtil.plusDays(DateUtil.nowUTC(), -POPULAR_DAYS) : since;
+        return popularity.top(deviceRepo.findAll(), start, limit);
+    }
+
+    /**
+     * Return open loans that are overdue by more than {@code olderThanDays} days, most overdue
+     * first.
+     *
+     * @param olderThanDays only loans whose due date is more than this many days in the past
+     * @param userId        only loans of this user; null for all users
+     * @param limit         maximum number of loans to return
+     * @return the overdue open loans ordered by due date
+     */
+    public List<Loan> overdue(int olderThanDays, String userId, int limit) {
+        return overdue.dueBefore(DateUtil.plusDays(DateUtil.nowUTC(), -olderThanDays), userId, limit);
+    }
+
+    /**
+     * Return the devices most on loan during the last {@code days} days.
+     *
+     * @param days  the window length in days, ending now
+     * @param limit maximum number of devices to return
+     * @return devices by utilization descending
+     */
+    public List<LoanAnalytics.DeviceUtilization> utilization(int days, int limit) {
+        Instant now = DateUtil.nowUTC();
+        return analytics.utilization(DateUtil.plusDays(now, -days), now, limit);
+    }
+
+    /**
+     * Return the average duration of the returned loans borrowed during the last {@code days} days.
+     *
+     * @param days the window length in days, ending now
+     * @return the loan count and average duration
+     */
+    public LoanAnalytics.LoanDurations durations(int days) {
+        Instant now = DateUtil.nowUTC();
+        return analytics.durations(DateUtil.plusDays(now, -days), now);
+    }
+
+    /**
+     * Return the on-time return rate per user for loans borrowed during the last {@code days} days.
+     *
+     * @param days   the window length in days, ending now
+     * @param userId only this user; null for all users
+     * @param limit  maximum number of users to return
+     * @return users by on-time rate ascending
+     */
+    public List<LoanAnalytics.OnTimeRate> onTimeRates(int days, String userId, int limit) {
+        Instant now = DateUtil.nowUTC();
+        return analytics.onTimeRates(DateUtil.plusDays(now, -days), now, userId, limit);
+    }
+
+    /**
+     * Return the borrows of the last {@code days} days by UTC hour of day.
+     *
+     * @param days the window length in days, ending now
+     * @return the hourly borrow counts
+     */
+    public LoanAnalytics.HourlyBorrows hourly(int days) {
+        Instant now = DateUtil.nowUTC();
+        return analytics.hourly(DateUtil.plusDays(now, -days), now);
     }
 }
@@ -0,0 +1,384 @@
+package dev.locker.util;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.datatype.jsr310.deser.InstantDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.InstantSerializer;
+import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
+import dev.locker.domain.User;
+import dev.locker.service.BorrowRequest;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streaming serializers and deserializers for the types on the hot path: {@link Device},
+ * {@link Loan}, {@link User}, {@link BorrowRequest} and {@link Instant}.
+ * <p>
+ * They replace Jackson's reflective bean (de)serializers, which look up property writers and
+ * creator parameters per value, with straight-line code over the generator and parser. The wire
+ * format is unchanged byte for byte: the same property order, {@code null} for an open loan's
+ * {@code returnedAt}, and instants as {@link Instant#toString()} writes them, formatted and parsed
+ * by {@link IsoInstant}. Input the fast paths do not handle (unknown properties, coercions, other
+ * date shapes) goes through the same Jackson machinery as before, so errors stay the same too.
+ */
+public final class DomainJsonModule extends SimpleModule {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString TAGS = new SerializedString("tags");
+    private static final SerializableString CONDITION = new SerializedString("condition");
+    private static final SerializableString TIMES_BORROWED = new SerializedString("timesBorrowed");
+    private static final SerializableString DEVICE_ID = new SerializedString("deviceId");
+    private static final SerializableString USER_ID = new SerializedString("userId");
+    private static final SerializableString BORROWED_AT = new SerializedString("borrowedAt");
+    private static final SerializableString DUE_AT = new SerializedString("dueAt");
+    private static final SerializableString RETURNED_AT = new SerializedString("returnedAt");
+
+    /**
+     * Constructor for DomainJsonModule.
+     */
+    public DomainJsonModule() {
+        super("DomainJsonModule");
+        addSerializer(Instant.class, new FastInstantSerializer());
+        addDeserializer(Instant.class, new FastInstantDeserializer());
+        addSerializer(Device.class, new DeviceSerializer());
+        addDeserializer(Device.class, new DeviceDeserializer());
+        addSerializer(Loan.class, new LoanSerializer());
+        addDeserializer(Loan.class, new LoanDeserializer());
+        addSerializer(User.class, new UserSerializer());
+        addDeserializer(User.class, new UserDeserializer());
+        addDeserializer(BorrowRequest.class, new BorrowRequestDeserializer());
+    }
+
+    /**
+     * Write an instant as {@link Instant#toString()} would, without the intermediate String.
+     *
+     * @param gen     the generator
+     * @param instant the instant, not null
+     * @throws IOException if writing fails
+     */
+    public static void writeInstant(JsonGenerator gen, Instant instant) throws IOException {
+        char[] buf = new char[IsoInstant.MAX_LENGTH];
+        int len = IsoInstant.format(instant, buf);
+        if (len < 0) {
+            gen.writeString(instant.toString());
+        } else {
+            gen.writeString(buf, 0, len);
+        }
+    }
+
+    /**
+     * Read a string property value: the text of a string token, null for a null token, and
+     * Jackson's usual coercion for anything else.
+     *
+     * @param p    the parser, positioned on the value
+     * @param ctxt the deserialization context
+     * @return the value
+     * @throws IOException if the value cannot be read as a string
+     */
+    public static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING) return p.getText();
+        if (t == JsonToken.VALUE_NULL) return null;
+        return ctxt.readValue(p, String.class);
+    }
+
+    private static Instant readInstant(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NULL) return null;
+        if (t == JsonToken.VALUE_STRING) {
+            Instant instant = IsoInstant.parse(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+            if (instant != null) return instant;
+        }
+        return InstantDeserializer.INSTANT.deserialize(p, ctxt);
+    }
+
+    private static Integer readInteger(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) return p.getIntValue();
+        if (t == JsonToken.VALUE_NULL) return null;
+        return ctxt.readValue(p, Integer.class);
+    }
+
+    private static void writeInstant(JsonGenerator gen, SerializerProvider provider, Instant value) throws IOException {
+        if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+            InstantSerializer.INSTANCE.serialize(value, gen, provider);
+        } else {
+            writeInstant(gen, value);
+        }
+    }
+
+    /**
+     * Return the name of an object's first property. Like Jackson's bean deserializers, this
+     * accepts the parser on the object's start or, as after a buffered type id, already on its
+     * first property.
+     *
+     * @return the property name, or null for an empty object
+     */
+    private static String firstField(JsonParser p, DeserializationContext ctxt, Class<?> type) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT) return p.nextFieldName();
+        if (t == JsonToken.FIELD_NAME) return p.currentName();
+        if (t != JsonToken.END_OBJECT) ctxt.handleUnexpectedToken(type, p);
+        return null;
+    }
+
+    private static final class FastInstantSerializer extends StdSerializer<Instant> {
+        FastInstantSerializer() {
+            super(Instant.class);
+        }
+
+        @Override
+        public void serialize(Instant value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            writeInstant(gen, provider, value);
+        }
+    }
+
+    private static final class FastInstantDeserializer extends StdDeserializer<Instant> {
+        FastInstantDeserializer() {
+            super(Instant.class);
+        }
+
+        @Override
+        public Instant deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return readInstant(p, ctxt);
+        }
+    }
+
+    private static final class DeviceSerializer extends StdSerializer<Device> {
+        DeviceSerializer() {
+            super(Device.class);
+        }
+
+        @Override
+        public void serialize(Device value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(ID);
+            gen.writeString(value.id());
+            gen.writeFieldName(NAME);
+            gen.writeString(value.name());
+            gen.writeFieldName(TAGS);
+            Set<String> tags = value.tags();
+            gen.writeStartArray(tags, tags.size());
+            for (String tag : tags) gen.writeString(tag);
+            gen.writeEndArray();
+            gen.writeFieldName(CONDITION);
+            gen.writeString(value.condition().name());
+            gen.writeFieldName(TIMES_BORROWED);
+            gen.writeNumber(value.timesBorrowed());
+            gen.writeEndObject();
+        }
+    }
+
+    private static final class DeviceDeserializer extends StdDeserializer<Device> {
+        private static final Device.Condition[] CONDITIONS = Device.Condition.values();
+
+        DeviceDeserializer() {
+            super(Device.class);
+        }
+
+        @Override
+        public Device deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String id = null;
+            String name = null;
+            Set<String> tags = null;
+            Device.Condition condition = null;
+            int timesBorrowed = 0;
+            for (String field = firstField(p, ctxt, Device.class); field != null; field = p.nextFieldName()) {
+                p.nextToken();
+                try {
+                    switch (field) {
+                        case "id" -> id = readString(p, ctxt);
+                        case "name" -> name = readString(p, ctxt);
+                        case "tags" -> tags = readTags(p, ctxt);
+                        case "condition" -> condition = readCondition(p, ctxt);
+                        case "timesBorrowed" -> timesBorrowed = _parseIntPrimitive(p, ctxt);
+                        default -> ctxt.handleUnknownProperty(p, this, Device.class, field);
+                    }
+                } catch (JacksonException e) {
+                    // as the bean deserializers do: failures carry the property path
+                    throw JsonMappingException.wrapWithPath(e, Device.class, field);
+                }
+            }
+            try {
+                return new Device(id, name, tags, condition, timesBorrowed);
+            } catch (RuntimeException e) {
+                throw ctxt.instantiationException(Device.class, e);
+            }
+        }
+
+        private static Set<String> readTags(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.VALUE_NULL) return null;
+            if (t != JsonToken.START_ARRAY) {
+                JavaType type = ctxt.getTypeFactory().constructCollectionType(Set.class, String.class);
+                return ctxt.readValue(p, type);
+            }
+            Set<String> tags = new HashSet<>();
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                tags.add(readString(p, ctxt));
+            }
+            return tags;
+        }
+
+        private static Device.Condition readCondition(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.VALUE_NULL) return null;
+            if (t == JsonToken.VALUE_STRING) {
+                String text = p.getText();
+                for (Device.Condition c : CONDITIONS) {
+                    if (c.name().equals(text)) return c;
+                }
+            }
+            return ctxt.readValue(p, Device.Condition.class);
+        }
+    }
+
+    private static final class LoanSerializer extends StdSerializer<Loan> {
+        LoanSerializer() {
+            super(Loan.class);
+        }
+
+        @Override
+        public void serialize(Loan value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(DEVICE_ID);
+            gen.writeString(value.deviceId());
+            gen.writeFieldName(USER_ID);
+            gen.writeString(value.userId());
+            gen.writeFieldName(BORROWED_AT);
+            writeInstant(gen, provider, value.borrowedAt());
+            gen.writeFieldName(DUE_AT);
+            writeInstant(gen, provider, value.dueAt());
+            gen.writeFieldName(RETURNED_AT);
+            if (value.returnedAt() == null) {
+                gen.writeNull();
+            } else {
+                writeInstant(gen, provider, value.returnedAt());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static final class LoanDeserializer extends StdDeserializer<Loan> {
+        LoanDeserializer() {
+            super(Loan.class);
+        }
+
+        @Override
+        public Loan deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String deviceId = null;
+            String userId = null;
+            Instant borrowedAt = null;
+            Instant dueAt = null;
+            Instant returnedAt = null;
+            for (String field = firstField(p, ctxt, Loan.class); field != null; field = p.nextFieldName()) {
+                p.nextToken();
+                try {
+                    switch (field) {
+                        case "deviceId" -> deviceId = readString(p, ctxt);
+                        case "userId" -> userId = readString(p, ctxt);
+                        case "borrowedAt" -> borrowedAt = readInstant(p, ctxt);
+                        case "dueAt" -> dueAt = readInstant(p, ctxt);
+                        case "returnedAt" -> returnedAt = readInstant(p, ctxt);
+                        default -> ctxt.handleUnknownProperty(p, this, Loan.class, field);
+                    }
+                } catch (JacksonException e) {
+                    throw JsonMappingException.wrapWithPath(e, Loan.class, field);
+                }
+            }
+            try {
+                return new Loan(deviceId, userId, borrowedAt, dueAt, returnedAt);
+            } catch (RuntimeException e) {
+                throw ctxt.instantiationException(Loan.class, e);
+            }
+        }
+    }
+
+    private static final class UserSerializer extends StdSerializer<User> {
+        UserSerializer() {
+            super(User.class);
+        }
+
+        @Override
+        public void serialize(User value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(value);
+            gen.writeFieldName(ID);
+            gen.writeString(value.id());
+            gen.writeFieldName(NAME);
+            gen.writeString(value.name());
+            gen.writeEndObject();
+        }
+    }
+
+    private static final class UserDeserializer extends StdDeserializer<User> {
+        UserDeserializer() {
+            super(User.class);
+        }
+
+        @Override
+        public User deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String id = null;
+            String name = null;
+            for (String field = firstField(p, ctxt, User.class); field != null; field = p.nextFieldName()) {
+                p.nextToken();
+                try {
+                    switch (field) {
+                        case "id" -> id = readString(p, ctxt);
+                        case "name" -> name = readString(p, ctxt);
+                        default -> ctxt.handleUnknownProperty(p, this, User.class, field);
+                    }
+                } catch (JacksonException e) {
+                    throw JsonMappingException.wrapWithPath(e, User.class, field);
+                }
+            }
+            try {
+                return new User(id, name);
+            } catch (RuntimeException e) {
+                throw ctxt.instantiationException(User.class, e);
+            }
+        }
+    }
+
+    private static final class BorrowRequestDeserializer extends StdDeserializer<BorrowRequest> {
+        BorrowRequestDeserializer() {
+            super(BorrowRequest.class);
+        }
+
+        @Override
+        public BorrowRequest deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String deviceId = null;
+            String userId = null;
+            Integer days = null;
+            for (String field = firstField(p, ctxt, BorrowRequest.class); field != null; field = p.nextFieldName()) {
+                p.nextToken();
+                try {
+                    switch (field) {
+                        case "deviceId" -> deviceId = readString(p, ctxt);
+                        case "userId" -> userId = readString(p, ctxt);
+                        case "days" -> days = readInteger(p, ctxt);
+                        default -> ctxt.handleUnknownProperty(p, this, BorrowRequest.class, field);
+                    }
+                } catch (JacksonException e) {
+                    throw JsonMappingException.wrapWithPath(e, BorrowRequest.class, field);
+                }
+            }
+            return new BorrowRequest(deviceId, userId, days);
+        }
+    }
+}
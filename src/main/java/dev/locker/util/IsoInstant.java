@@ -0,0 +1,165 @@
+package dev.locker.util;
+
+import java.time.Instant;
+
+/**
+ * Allocation-light ISO-8601 formatting and parsing of UTC instants in exactly the shape of
+ * {@link Instant#toString()}: {@code yyyy-MM-ddTHH:mm:ss[.fff[fff[fff]]]Z}.
+ * <p>
+ * Both directions cover years 0000 to 9999 with plain civil-calendar arithmetic instead of going
+ * through {@code DateTimeFormatter}. Anything outside that shape (other years, offsets, leap
+ * seconds, lower-case separators) is left to the caller's general-purpose fallback.
+ */
+final class IsoInstant {
+    /**
+     * Longest formatted instant: {@code 2026-10-17T23:24:13.849081912Z}.
+     */
+    static final int MAX_LENGTH = 30;
+
+    private static final long MIN_SECOND = -62167219200L; // 0000-01-01T00:00:00Z
+    private static final long MAX_SECOND = 253402300799L; // 9999-12-31T23:59:59Z
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private IsoInstant() {
+    }
+
+    /**
+     * Format an instant into {@code buf}, which must have room for {@link #MAX_LENGTH} chars.
+     *
+     * @param instant the instant
+     * @param buf     the target buffer
+     * @return the number of chars written, or -1 if the instant is outside years 0000 to 9999
+     */
+    static int format(Instant instant, char[] buf) {
+        long seconds = instant.getEpochSecond();
+        if (seconds < MIN_SECOND || seconds > MAX_SECOND) return -1;
+        long day = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) (seconds - day * SECONDS_PER_DAY);
+
+        // civil date from day number, eras of 400 years starting on 0000-03-01
+        long z = day + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_ERA);
+        int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (era * 400 + yearOfEra) + (month <= 2 ? 1 : 0);
+
+        digits4(buf, 0, year);
+        buf[4] = '-';
+        digits2(buf, 5, month);
+        buf[7] = '-';
+        digits2(buf, 8, dayOfMonth);
+        buf[10] = 'T';
+        digits2(buf, 11, secondOfDay / 3600);
+        buf[13] = ':';
+        digits2(buf, 14, secondOfDay / 60 % 60);
+        buf[16] = ':';
+        digits2(buf, 17, secondOfDay % 60);
+        int pos = 19;
+        int nanos = instant.getNano();
+        if (nanos != 0) {
+            // as Instant.toString: the fraction in groups of three digits, as many as needed
+            buf[pos++] = '.';
+            if (nanos % 1_000_000 == 0) {
+                pos = digits(buf, pos, nanos / 1_000_000, 3);
+            } else if (nanos % 1000 == 0) {
+                pos = digits(buf, pos, nanos / 1000, 6);
+            } else {
+                pos = digits(buf, pos, nanos, 9);
+            }
+        }
+        buf[pos++] = 'Z';
+        return pos;
+    }
+
+    /**
+     * Parse an instant from {@code len} chars of {@code text} starting at {@code off}.
+     *
+     * @param text the chars
+     * @param off  start of the value
+     * @param len  length of the value
+     * @return the instant, or null if the text is not in the exact shape this class writes
+     */
+    static Instant parse(char[] text, int off, int len) {
+        if (len < 20 || len > MAX_LENGTH) return null;
+        if (text[off + 4] != '-' || text[off + 7] != '-' || text[off + 10] != 'T'
+                || text[off + 13] != ':' || text[off + 16] != ':' || text[off + len - 1] != 'Z') {
+            return null;
+        }
+        int year = number(text, off, 4);
+        int month = number(text, off + 5, 2);
+        int dayOfMonth = number(text, off + 8, 2);
+        int hour = number(text, off + 11, 2);
+        int minute = number(text, off + 14, 2);
+        int second = number(text, off + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        int nanos = 0;
+        int fraction = len - 20;
+        if (fraction > 0) {
+            // '.' and one to nine digits
+            if (fraction < 2 || text[off + 19] != '.') return null;
+            int digits = fraction - 1;
+            nanos = number(text, off + 20, digits);
+            if (nanos < 0) return null;
+            for (int i = digits; i < 9; i++) nanos *= 10;
+        }
+        return Instant.ofEpochSecond(epochDay(year, month, dayOfMonth) * SECONDS_PER_DAY
+                + hour * 3600L + minute * 60L + second, nanos);
+    }
+
+    private static long epochDay(int year, int month, int dayOfMonth) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        int yearOfEra = (int) (y - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * @return the decimal value of {@code count} digits, or -1 if any of them is not a digit
+     */
+    private static int number(char[] text, int off, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int d = text[off + i] - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static void digits2(char[] buf, int pos, int value) {
+        buf[pos] = (char) ('0' + value / 10);
+        buf[pos + 1] = (char) ('0' + value % 10);
+    }
+
+    private static void digits4(char[] buf, int pos, int value) {
+        digits2(buf, pos, value / 100);
+        digits2(buf, pos + 2, value % 100);
+    }
+
+    private static int digits(char[] buf, int pos, int value, int count) {
+        for (int i = pos + count - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + count;
+    }
+}
@@ -1,15 +1,24 @@
 package dev.locker.util;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
 /**
- * Singleton ObjectMapper configuration for the project.
+ * Singleton ObjectMapper configuration for the project. The domain types are written and read by
+ * the hand-written {@link DomainJsonModule} instead of Jackson's reflective bean handling.
  */
 public final class JsonUtil {
     private static final ObjectMapper MAPPER = new ObjectMapper()
             .registerModule(new JavaTimeModule())
+            .registerModule(new DomainJsonModule())
             .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
     private JsonUtil() {
@@ -34,4 +43,27 @@ public final class JsonUtil {
     public static String pretty(Object obj) throws com.fasterxml.jackson.core.JsonProcessingException {
         return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(obj);
     }
+
+    /**
+     * Stream the elements of a JSON array file to the given sink one at a time, without binding
+     * the whole array into memory first.
+     *
+     * @param file the file containing a JSON array
+     * @param type the element type
+     * @param sink receives every element in file order
+     * @param <T>  the element type
+     * @return the number of elements read
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public static <T> long readArray(Path file, Class<T> type, Consumer<? super T> sink) throws IOException {
+        long count = 0;
+        try (InputStream in = Files.newInputStream(file);
+             MappingIterator<T> it = MAPPER.readerFor(type).readValues(in)) {
+            while (it.hasNextValue()) {
+                sink.accept(it.nextValue());
+                count++;
+            }
+        }
+        return count;
+    }
 }
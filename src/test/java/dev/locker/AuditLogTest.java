@@ -0,0 +1,89 @@
+package dev.locker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import dev.locker.audit.AuditLog;
+import dev.locker.domain.Loan;
+import dev.locker.util.JsonUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AuditLogTest {
+    @TempDir
+    Path dir;
+
+    private AuditLog audit;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        audit = new AuditLog(dir, "audit", 100_000, AuditLog.FullPolicy.BLOCK, 4096);
+    }
+
+    @Test
+    public void writesEveryEventInOrderAcrossRotations() throws Exception {
+        Instant t = Instant.parse("2026-01-01T00:00:00Z");
+        for (int i = 0; i < 2000; i++) {
+            Loan loan = new Loan("d-" + i, "u-1", t.plusSeconds(i), t.plus(Duration.ofDays(7)), null);
+            audit.onBorrowed(loan);
+            audit.onReturned(loan.withReturnedAt(t.plusSeconds(i + 1)));
+        }
+        audit.close();
+        audit.onBorrowed(new Loan("late", "u-1", t, t, null));
+        assertEquals(4000, audit.written());
+        assertEquals(1, audit.dropped());
+
+        List<String> lines = new ArrayList<>();
+        int rotated = 0;
+        while (Files.exists(dir.resolve("audit." + (rotated + 1) + ".ndjson"))) {
+            Path file = dir.resolve("audit." + ++rotated + ".ndjson");
+            assertTrue(Files.size(file) <= 4096);
+            lines.addAll(Files.readAllLines(file));
+        }
+        lines.addAll(Files.readAllLines(dir.resolve("audit.ndjson")));
+        assertTrue(rotated > 10);
+        assertEquals(4000, lines.size());
+        for (int i = 0; i < 2000; i++) {
+            JsonNode borrowed = JsonUtil.mapper().readTree(lines.get(2 * i));
+            JsonNode returned = JsonUtil.mapper().readTree(lines.get(2 * i + 1));
+            assertEquals("borrowed", borrowed.get("event").asText());
+            assertEquals("d-" + i, borrowed.get("deviceId").asText());
+            assertEquals(t.plusSeconds(i).toString(), borrowed.get("at").asText());
+            assertFalse(borrowed.has("returnedAt"));
+            assertEquals("returned", returned.get("event").asText());
+            assertEquals(t.plusSeconds(i + 1).toString(), returned.get("returnedAt").asText());
+        }
+    }
+
+    @Test
+    public void accountsForEventsRacingWithClose() throws Exception {
+        Instant t = Instant.parse("2026-01-01T00:00:00Z");
+        int perThread = 20_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int n = 0; n < 4; n++) {
+            String device = "d-" + n;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    audit.onBorrowed(new Loan(device, "u-1", t.plusSeconds(i), t, null));
+                }
+            }));
+        }
+        Thread.sleep(5);
+        audit.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4L * perThread, audit.written() + audit.dropped());
+        assertEquals(0, audit.queued());
+    }
+}
@@ -0,0 +1,73 @@
+package dev.locker;
+
+import dev.locker.http.Compression;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressionTest {
+    private byte[] json;
+
+    @BeforeEach
+    public void setup() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":\"d-").append(i).append("\",\"name\":\"Device ").append(i * 31 % 97).append("\"}");
+        }
+        json = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void negotiatesByQuality() {
+        assertEquals(Compression.Encoding.IDENTITY, Compression.negotiate(null));
+        assertEquals(Compression.Encoding.GZIP, Compression.negotiate(List.of("gzip, deflate, br")));
+        assertEquals(Compression.Encoding.DEFLATE, Compression.negotiate(List.of("gzip;q=0.5", "deflate")));
+        assertEquals(Compression.Encoding.DEFLATE, Compression.negotiate(List.of("gzip;q=0, *")));
+        assertEquals(Compression.Encoding.IDENTITY, Compression.negotiate(List.of("br, identity")));
+        assertEquals(Compression.Encoding.IDENTITY, Compression.negotiate(List.of("gzip"), Compression.MIN_BYTES - 1));
+        assertEquals(Compression.Encoding.GZIP, Compression.negotiate(List.of("gzip"), Compression.MIN_BYTES));
+    }
+
+    @Test
+    public void compressedBodiesRoundTrip() throws IOException {
+        // twice, so that the second round uses the pooled compressors
+        for (int round = 0; round < 2; round++) {
+            byte[] gzip = Compression.compress(json, 0, json.length, Compression.Encoding.GZIP);
+            byte[] deflate = Compression.compress(json, 0, json.length, Compression.Encoding.DEFLATE);
+            assertTrue(gzip.length < json.length / 3);
+            assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+            assertArrayEquals(json, new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+
+            assertArrayEquals(json, unstream(Compression.Encoding.GZIP, GZIPInputStream::new));
+            assertArrayEquals(json, unstream(Compression.Encoding.DEFLATE, InflaterInputStream::new));
+        }
+    }
+
+    private byte[] unstream(Compression.Encoding encoding, Decoder decoder) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.wrap(sink, encoding)) {
+            for (int off = 0; off < json.length; off += 1000) {
+                out.write(json, off, Math.min(1000, json.length - off));
+            }
+        }
+        return decoder.open(new ByteArrayInputStream(sink.toByteArray())).readAllBytes();
+    }
+
+    private interface Decoder {
+        InputStream open(InputStream in) throws IOException;
+    }
+}
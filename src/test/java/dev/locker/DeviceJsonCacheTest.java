@@ -0,0 +1,60 @@
+package dev.locker;
+
+import dev.locker.domain.Device;
+import dev.locker.http.DeviceJsonCache;
+import dev.locker.repo.DeviceRepository;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.util.JsonUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DeviceJsonCacheTest {
+    @TempDir
+    Path dir;
+
+    private DeviceRepository repo;
+    private DeviceJsonCache cache;
+
+    @BeforeEach
+    public void setup() {
+        repo = new FileBackedDeviceRepository(dir.resolve("devices.json"));
+        for (int i = 0; i < 50; i++) {
+            repo.save(new Device("d-" + i, "Device \"" + i + "\" ü", Set.of("usb", "t" + i % 3), Device.Condition.FAIR, i));
+        }
+        cache = new DeviceJsonCache(repo);
+    }
+
+    @Test
+    public void concatenatedFragmentsEqualJacksonOutput() throws Exception {
+        List<Device> devices = repo.findAll();
+        assertArrayEquals(JsonUtil.mapper().writeValueAsBytes(devices), cache.toArray(devices));
+        assertArrayEquals(JsonUtil.mapper().writeValueAsBytes(List.of()), cache.toArray(List.of()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.writeArray(out, repo.iterateAll());
+        assertArrayEquals(JsonUtil.mapper().writeValueAsBytes(devices), out.toByteArray());
+    }
+
+    @Test
+    public void saveReplacesFragment() throws Exception {
+        Device device = repo.findById("d-7").orElseThrow();
+        byte[] before = cache.fragment(device);
+        assertSame(before, cache.fragment(device));
+
+        Device borrowed = device.incrementTimesBorrowed();
+        repo.save(borrowed);
+        byte[] after = cache.fragment(borrowed);
+        assertNotSame(before, after);
+        assertArrayEquals(JsonUtil.mapper().writeValueAsBytes(borrowed), after);
+    }
+}
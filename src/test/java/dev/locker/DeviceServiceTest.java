@@ -0,0 +1,112 @@
+package dev.locker;
+
+import dev.locker.domain.Device;
+import dev.locker.repo.DeviceRepository;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.service.DeviceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeviceServiceTest {
+    private static final String[] WORDS = {"Dell", "Laptop", "USB-C", "Hub", "Camera", "Canon", "Mic", "Tripod", "iPad", "Pro"};
+    private static final String[] TAGS = {"video", "audio", "usb", "Apple", "4K", "portable"};
+
+    @TempDir
+    Path dir;
+
+    private DeviceRepository repo;
+    private DeviceService deviceService;
+    private Random random;
+
+    @BeforeEach
+    public void setup() {
+        random = new Random(7);
+        repo = new FileBackedDeviceRepository(dir.resolve("devices.json"));
+        for (int i = 0; i < 500; i++) {
+            repo.save(randomDevice("d-" + i));
+        }
+        deviceService = new DeviceService(repo);
+    }
+
+    @Test
+    public void searchMatchesFullScan() {
+        for (String q : List.of("a", "US", "usb", "laptop", "o", "CAM", "4k", "pro", "ipad pro", "hub  usb", "zzz", "d-1")) {
+            assertEquals(fullScan(q, Set.of()), ids(deviceService.search(q, Set.of(), 0, Integer.MAX_VALUE)), q);
+        }
+        assertEquals(fullScan("", Set.of("apple", "usb")), ids(deviceService.search(null, Set.of("Apple", "USB"), 0, 1000)));
+        assertEquals(fullScan("ca", Set.of("video")), ids(deviceService.search("ca", Set.of("video"), 0, 1000)));
+    }
+
+    @Test
+    public void searchFollowsSavesAndPages() {
+        assertEquals(500, deviceService.version());
+        for (int i = 0; i < 200; i++) {
+            String id = "d-" + random.nextInt(600);
+            Device d = i % 3 == 0 && repo.findById(id).isPresent()
+                    ? repo.findById(id).orElseThrow().incrementTimesBorrowed()
+                    : randomDevice(id);
+            repo.save(d);
+        }
+        assertEquals(700, deviceService.version());
+        assertEquals(fullScan("la", Set.of()), ids(deviceService.search("la", Set.of(), 0, Integer.MAX_VALUE)));
+
+        List<Device> all = deviceService.search("o", Set.of(), 0, Integer.MAX_VALUE);
+        List<Device> paged = new ArrayList<>();
+        for (int offset = 0; offset < all.size(); offset += 7) {
+            paged.addAll(deviceService.search("o", Set.of(), offset, 7));
+        }
+        assertEquals(all, paged);
+        assertEquals(all.size(), all.stream().distinct().count());
+    }
+
+    @Test
+    public void pagesWalkAllDevicesInIdOrder() {
+        List<String> walked = new ArrayList<>();
+        String after = null;
+        List<Device> page;
+        do {
+            page = deviceService.page(after, 64);
+            page.forEach(d -> walked.add(d.id()));
+            if (!page.isEmpty()) after = page.get(page.size() - 1).id();
+        } while (page.size() == 64);
+        List<String> expected = new ArrayList<>();
+        deviceService.iterateAll().forEach(d -> expected.add(d.id()));
+        assertEquals(ids(deviceService.listAll()), expected);
+        assertEquals(expected, walked);
+    }
+
+    private Device randomDevice(String id) {
+        String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+        Set<String> tags = new HashSet<>();
+        for (int t = random.nextInt(3); t > 0; t--) tags.add(TAGS[random.nextInt(TAGS.length)]);
+        return new Device(id, name, tags, Device.Condition.GOOD, 0);
+    }
+
+    private List<String> fullScan(String query, Set<String> tags) {
+        List<String> terms = query.isBlank() ? List.of() : List.of(query.toLowerCase(Locale.ROOT).trim().split("\\s+"));
+        return repo.findAll().stream()
+                .filter(d -> terms.stream().allMatch(term -> d.name().toLowerCase(Locale.ROOT).contains(term)
+                        || d.tags().stream().anyMatch(t -> t.toLowerCase(Locale.ROOT).contains(term))))
+                .filter(d -> tags.stream().allMatch(tag -> d.tags().stream().anyMatch(tag::equalsIgnoreCase)))
+                .map(Device::id)
+                .sorted(Comparator.naturalOrder())
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<Device> devices) {
+        return devices.stream().map(Device::id).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,173 @@
+package dev.locker;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
+import dev.locker.domain.User;
+import dev.locker.service.BorrowRequest;
+import dev.locker.util.JsonUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DomainJsonModuleTest {
+    /**
+     * The mapper as configured before the hand-written serializers: the reference wire format.
+     */
+    private static final ObjectMapper REFLECTIVE = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private List<Device> devices;
+    private List<Loan> loans;
+    private List<User> users;
+
+    @BeforeEach
+    public void setup() {
+        Random random = new Random(7);
+        devices = new ArrayList<>();
+        loans = new ArrayList<>();
+        users = new ArrayList<>();
+        Device.Condition[] conditions = Device.Condition.values();
+        for (int i = 0; i < 200; i++) {
+            Set<String> tags = i % 5 == 0 ? Set.of() : Set.of("usb-c", "t" + i % 7, "\"quoted\" ü\n");
+            devices.add(new Device("d-" + i, "Device " + i + " \\ é€😀", tags,
+                    conditions[i % conditions.length], random.nextInt(1000)));
+            users.add(new User("u-" + i, "User \"" + i + "\""));
+            Instant borrowed = Instant.ofEpochSecond(1_600_000_000L + random.nextInt(200_000_000), nanos(random, i));
+            Instant returned = i % 3 == 0 ? null : borrowed.plusSeconds(random.nextInt(1_000_000)).plusNanos(i);
+            loans.add(new Loan("d-" + i, "u-" + i, borrowed, borrowed.plusSeconds(7 * 86400), returned));
+        }
+        // edges of the fast path and instants it leaves to the JDK
+        Instant[] edges = {
+                Instant.EPOCH, Instant.parse("0000-01-01T00:00:00Z"), Instant.parse("1969-12-31T23:59:59.999999999Z"),
+                Instant.parse("2024-02-29T12:00:00.100Z"), Instant.parse("9999-12-31T23:59:59.000001Z"),
+                Instant.parse("+10000-01-01T00:00:00Z"), Instant.parse("-0001-12-31T23:59:59Z"), Instant.MIN, Instant.MAX
+        };
+        for (Instant edge : edges) {
+            loans.add(new Loan("d-edge", "u-edge", edge, edge, edge));
+        }
+    }
+
+    private static int nanos(Random random, int i) {
+        return switch (i % 4) {
+            case 0 -> 0;
+            case 1 -> random.nextInt(1000) * 1_000_000;
+            case 2 -> random.nextInt(1_000_000) * 1000;
+            default -> random.nextInt(1_000_000_000);
+        };
+    }
+
+    @Test
+    public void writesTheSameBytesAsTheReflectiveMapper() throws Exception {
+        for (Object value : List.of(devices, loans, users)) {
+            assertArrayEquals(REFLECTIVE.writeValueAsBytes(value), JsonUtil.mapper().writeValueAsBytes(value));
+            assertEquals(REFLECTIVE.writerWithDefaultPrettyPrinter().writeValueAsString(value), JsonUtil.pretty(value));
+        }
+        for (Loan loan : loans) {
+            assertEquals("\"" + loan.borrowedAt() + "\"", JsonUtil.mapper().writeValueAsString(loan.borrowedAt()));
+        }
+    }
+
+    @Test
+    public void readsBackWhatTheReflectiveMapperReads() throws Exception {
+        roundTrip(devices, new TypeReference<List<Device>>() {
+        });
+        roundTrip(loans, new TypeReference<List<Loan>>() {
+        });
+        roundTrip(users, new TypeReference<List<User>>() {
+        });
+        for (String file : List.of("devices.json", "loans.json", "users.json")) {
+            Path path = Path.of("data", file);
+            assertEquals(REFLECTIVE.writeValueAsString(REFLECTIVE.readTree(path.toFile())),
+                    REFLECTIVE.writeValueAsString(JsonUtil.mapper().readValue(path.toFile(), Object.class)));
+        }
+        assertEquals(REFLECTIVE.writeValueAsString(REFLECTIVE.readValue(Path.of("data", "loans.json").toFile(),
+                        new TypeReference<List<Loan>>() {
+                        })),
+                REFLECTIVE.writeValueAsString(JsonUtil.mapper().readValue(Path.of("data", "loans.json").toFile(),
+                        new TypeReference<List<Loan>>() {
+                        })));
+    }
+
+    @Test
+    public void unusualInputBehavesAsBefore() {
+        String[] loanJson = {
+                "{\"userId\":\"u-1\",\"deviceId\":\"d-1\",\"dueAt\":\"2025-10-08T09:00:00Z\",\"borrowedAt\":\"2025-10-01T09:00:00.5Z\"}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"2025-10-01T09:00:00+02:00\",\"dueAt\":\"2025-10-01t09:00:00z\"}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":1700000000,\"dueAt\":1700000000.5,\"returnedAt\":null}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"2025-02-29T09:00:00Z\",\"dueAt\":\"2025-10-08T09:00:00Z\"}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"2016-12-31T23:59:60Z\",\"dueAt\":\"2025-10-08T09:00:00Z\"}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"2025-10-01T09:00:00.1234567890Z\",\"dueAt\":\"2025-10-08T09:00:00Z\"}",
+                "{\"deviceId\":\"d-1\",\"borrowedAt\":\"2025-10-01T09:00:00Z\",\"dueAt\":\"2025-10-08T09:00:00Z\"}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"2025-10-01T09:00:00Z\",\"dueAt\":\"2025-10-08T09:00:00Z\",\"x\":1}",
+                "[\"d-1\"]"
+        };
+        for (String json : loanJson) {
+            assertSameOutcome(json, Loan.class);
+        }
+        String[] deviceJson = {
+                "{\"id\":\"d-1\",\"name\":\"A\"}",
+                "{\"id\":\"d-1\",\"name\":\"A\",\"tags\":null,\"condition\":null,\"timesBorrowed\":null}",
+                "{\"id\":7,\"name\":true,\"tags\":[\"a\",\"a\",3],\"condition\":\"FAIR\",\"timesBorrowed\":\"12\"}",
+                "{\"id\":\"d-1\",\"name\":\"A\",\"tags\":\"a\"}",
+                "{\"id\":\"d-1\",\"name\":\"A\",\"tags\":[null]}",
+                "{\"id\":\"d-1\",\"name\":\"A\",\"condition\":\"BROKEN\"}",
+                "{\"id\":\"d-1\",\"name\":\"A\",\"timesBorrowed\":1.5}",
+                "{\"name\":\"A\"}",
+                "\"d-1\""
+        };
+        for (String json : deviceJson) {
+            assertSameOutcome(json, Device.class);
+        }
+        String[] borrowJson = {
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"days\":3}",
+                "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"days\":\"3\"}",
+                "{\"deviceId\":\"d-1\",\"days\":2.5}",
+                "{\"days\":\"x\"}",
+                "{\"days\":99999999999}",
+                "{\"deviceId\":{}}",
+                "{}",
+                "null"
+        };
+        for (String json : borrowJson) {
+            assertSameOutcome(json, BorrowRequest.class);
+        }
+        assertSameOutcome("{\"id\":\"u-1\",\"name\":\"N\",\"email\":\"x\"}", User.class);
+        assertSameOutcome("{\"id\":\"u-1\"}", User.class);
+    }
+
+    private <T> void roundTrip(List<T> values, TypeReference<List<T>> type) throws Exception {
+        // compared after reading, not with the input: a device's tag order is not stable across set copies
+        byte[] json = JsonUtil.mapper().writeValueAsBytes(values);
+        assertArrayEquals(REFLECTIVE.writeValueAsBytes(REFLECTIVE.readValue(json, type)),
+                REFLECTIVE.writeValueAsBytes(JsonUtil.mapper().readValue(json, type)));
+    }
+
+    /**
+     * Both mappers either read the same value or fail with the same exception type.
+     */
+    private static void assertSameOutcome(String json, Class<?> type) {
+        assertEquals(outcome(REFLECTIVE, json, type), outcome(JsonUtil.mapper(), json, type), json);
+    }
+
+    private static String outcome(ObjectMapper mapper, String json, Class<?> type) {
+        try {
+            return REFLECTIVE.writeValueAsString(mapper.readValue(json, type));
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+}
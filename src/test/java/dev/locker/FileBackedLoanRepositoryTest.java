@@ -0,0 +1,68 @@
+package dev.locker;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.file.FileBackedLoanRepository;
+import dev.locker.repo.file.Journal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileBackedLoanRepositoryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void findAllIsASnapshot() {
+        Instant borrowed = Instant.parse("2025-10-01T09:00:00Z");
+        Loan open = new Loan("d-001", "u-101", borrowed, borrowed.plusSeconds(86400), null);
+        Loan returned = open.withReturnedAt(borrowed.plusSeconds(3600));
+        FileBackedLoanRepository repo = new FileBackedLoanRepository(dir.resolve("loans.json"));
+        repo.save(open);
+        List<Loan> before = repo.findAll();
+        repo.update(returned);
+        repo.save(new Loan("d-002", "u-101", borrowed, borrowed.plusSeconds(86400), null));
+        List<Loan> after = repo.findAll();
+        repo.update(new Loan("d-001", "u-102", borrowed, borrowed.plusSeconds(86400), borrowed.plusSeconds(7200)));
+
+        assertEquals(1, before.size());
+        assertNull(before.get(0).returnedAt());
+        assertEquals("u-101", before.get(0).userId());
+        assertEquals(2, after.size());
+        assertEquals(returned.returnedAt(), after.get(0).returnedAt());
+        assertEquals("u-101", after.get(0).userId());
+        assertEquals("u-102", repo.findAll().get(0).userId());
+    }
+
+    @Test
+    public void corruptSnapshotFailsStartupAndKeepsTheJournal() throws Exception {
+        Path file = dir.resolve("loans.json");
+        Instant borrowed = Instant.parse("2025-10-01T09:00:00Z");
+        try (Journal journal = new Journal(dir, "loans")) {
+            FileBackedLoanRepository repo = new FileBackedLoanRepository(file, journal);
+            repo.save(new Loan("d-001", "u-101", borrowed, borrowed.plusSeconds(86400), null));
+            repo.persist();
+        }
+        byte[] snapshot = Files.readAllBytes(file);
+        Files.write(file, new String(snapshot, StandardCharsets.UTF_8).substring(0, snapshot.length / 2)
+                .getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = Files.readAllBytes(file);
+
+        try (Journal journal = new Journal(dir, "loans")) {
+            assertThrows(UncheckedIOException.class, () -> new FileBackedLoanRepository(file, journal));
+        }
+        assertArrayEquals(truncated, Files.readAllBytes(file));
+        assertTrue(Files.size(dir.resolve("loans.journal.1")) > 0);
+    }
+}
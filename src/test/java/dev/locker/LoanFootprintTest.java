@@ -0,0 +1,58 @@
+package dev.locker;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.file.FileBackedLoanRepository;
+import dev.locker.repo.file.SnapshotWriter;
+import dev.locker.util.JsonUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoanFootprintTest {
+    private static final int LOANS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private List<Loan> loans;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        Random random = new Random(3);
+        Instant start = Instant.parse("2026-01-01T00:00:00.123456789Z");
+        loans = new ArrayList<>(LOANS);
+        for (int i = 0; i < LOANS; i++) {
+            Instant borrowedAt = start.plusNanos(i * 1_000_003L);
+            Instant returnedAt = random.nextInt(10) == 0 ? null : borrowedAt.plus(Duration.ofHours(1 + random.nextInt(48)));
+            loans.add(new Loan("d-" + random.nextInt(400), "u-" + random.nextInt(200), borrowedAt,
+                    borrowedAt.plus(Duration.ofDays(7)), returnedAt));
+        }
+        file = dir.resolve("loans.json");
+        SnapshotWriter.write(file, loans);
+    }
+
+    @Test
+    public void loadedLoansTakeAFractionOfTheirObjectSize() throws Exception {
+        FileBackedLoanRepository repo = new FileBackedLoanRepository(file);
+        assertEquals(loans, repo.findAll());
+
+        List<Loan> parsed = new ArrayList<>(LOANS);
+        JsonUtil.readArray(file, Loan.class, parsed::add);
+        long objectBytes = GraphLayout.parseInstance(parsed).totalSize();
+        long storeBytes = GraphLayout.parseInstance(repo).totalSize();
+        assertTrue(storeBytes / LOANS <= 56, "repository takes " + storeBytes / LOANS + " B/loan");
+        assertTrue(storeBytes * 3 < objectBytes, "repository takes " + storeBytes + " B, loan objects " + objectBytes + " B");
+    }
+}
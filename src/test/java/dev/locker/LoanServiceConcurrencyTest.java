@@ -0,0 +1,125 @@
+package dev.locker;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.DeviceRepository;
+import dev.locker.repo.LoanRepository;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.repo.file.FileBackedLoanRepository;
+import dev.locker.repo.file.FileBackedUserRepository;
+import dev.locker.service.ConflictException;
+import dev.locker.service.LoanService;
+import dev.locker.service.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoanServiceConcurrencyTest {
+    private static final int DEVICES = 8;
+    private static final int THREADS = 32;
+
+    @TempDir
+    Path dir;
+
+    private LoanService loanService;
+    private DeviceRepository deviceRepo;
+    private LoanRepository loanRepo;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        StringBuilder devices = new StringBuilder("[");
+        for (int i = 0; i < DEVICES; i++) {
+            if (i > 0) devices.append(',');
+            devices.append("{\"id\":\"d-").append(i).append("\",\"name\":\"Device ").append(i).append("\",\"timesBorrowed\":0}");
+        }
+        Files.writeString(dir.resolve("devices.json"), devices.append(']'));
+        Files.writeString(dir.resolve("users.json"), "[{\"id\":\"u-1\",\"name\":\"Anna\"}]");
+        deviceRepo = new FileBackedDeviceRepository(dir.resolve("devices.json"));
+        loanRepo = new FileBackedLoanRepository(dir.resolve("loans.json"));
+        loanService = new LoanService(deviceRepo, new FileBackedUserRepository(dir.resolve("users.json")), loanRepo);
+    }
+
+    @Test
+    public void concurrentBorrowsOfSameDeviceYieldOneLoan() throws Exception {
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        runConcurrently(THREADS, i -> {
+            try {
+                loanService.borrow("d-0", "u-1", 1);
+                successes.incrementAndGet();
+            } catch (ConflictException e) {
+                conflicts.incrementAndGet();
+            }
+        });
+        assertEquals(1, successes.get());
+        assertEquals(THREADS - 1, conflicts.get());
+        assertEquals(1, deviceRepo.findById("d-0").orElseThrow().timesBorrowed());
+    }
+
+    @Test
+    public void borrowReturnCyclesKeepCountsExact() throws Exception {
+        int rounds = 200;
+        AtomicInteger[] borrows = new AtomicInteger[DEVICES];
+        for (int i = 0; i < DEVICES; i++) borrows[i] = new AtomicInteger();
+        runConcurrently(THREADS, t -> {
+            for (int r = 0; r < rounds; r++) {
+                int device = (t + r) % DEVICES;
+                String id = "d-" + device;
+                try {
+                    loanService.borrow(id, "u-1", 1);
+                    borrows[device].incrementAndGet();
+                } catch (ConflictException ignored) {
+                }
+                try {
+                    loanService.returnDevice(id);
+                } catch (NotFoundException ignored) {
+                }
+            }
+        });
+        for (int i = 0; i < DEVICES; i++) {
+            String id = "d-" + i;
+            assertEquals(borrows[i].get(), deviceRepo.findById(id).orElseThrow().timesBorrowed());
+            long loans = loanRepo.findAll().stream().filter(l -> l.deviceId().equals(id)).count();
+            assertEquals(borrows[i].get(), loans);
+            long open = loanRepo.findAll().stream().filter(l -> l.deviceId().equals(id) && l.returnedAt() == null).count();
+            assertTrue(open <= 1);
+        }
+        List<Loan> all = loanRepo.findAll();
+        assertEquals(all.size(), all.stream().distinct().count());
+    }
+
+    private interface Task {
+        void run(int index) throws Exception;
+    }
+
+    private static void runConcurrently(int threads, Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run(index);
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -7,11 +7,18 @@ import dev.locker.repo.UserRepository;
 import dev.locker.repo.file.FileBackedDeviceRepository;
 import dev.locker.repo.file.FileBackedLoanRepository;
 import dev.locker.repo.file.FileBackedUserRepository;
+import dev.locker.service.BatchResult;
+import dev.locker.service.BorrowRequest;
+import dev.locker.service.ConflictException;
 import dev.locker.service.LoanService;
+import dev.locker.service.NotFoundException;
+import dev.locker.service.ValidationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,6 +51,45 @@ public class LoanServiceTest {
         assertThrows(RuntimeException.class, () -> loanService.borrow("d-001", "u-103", 2));
     }
 
+    @Test
+    public void borrowRejectsDaysOutsideTheStoredRange() {
+        ValidationException e = assertThrows(ValidationException.class,
+                () -> loanService.borrow("d-002", "u-103", 100_000));
+        assertEquals("days must be at most " + LoanService.MAX_DAYS, e.getMessage());
+        assertTrue(loanRepo.findOpenLoanByDevice("d-002").isEmpty());
+
+        Loan loan = loanService.borrow("d-002", "u-103", LoanService.MAX_DAYS);
+        assertEquals(loan, loanRepo.findOpenLoanByDevice("d-002").orElseThrow());
+        assertEquals(loan.dueAt(), loanRepo.findOpenLoanByDevice("d-002").orElseThrow().dueAt());
+    }
+
+    @Test
+    public void batchBorrowAndReturnReportPerItem() {
+        List<BatchResult> borrowed = loanService.borrowBatch(List.of(
+                new BorrowRequest("d-002", "u-103", 3),
+                new BorrowRequest("d-001", "u-103", 3),
+                new BorrowRequest("d-002", "u-101", 1),
+                new BorrowRequest("d-003", "u-999", 1),
+                new BorrowRequest("d-003", "u-101", 0),
+                new BorrowRequest("d-003", "u-101", 2)));
+        assertNotNull(borrowed.get(0).loan());
+        assertInstanceOf(ConflictException.class, borrowed.get(1).error());
+        assertInstanceOf(ConflictException.class, borrowed.get(2).error());
+        assertInstanceOf(NotFoundException.class, borrowed.get(3).error());
+        assertInstanceOf(ValidationException.class, borrowed.get(4).error());
+        assertEquals("u-101", borrowed.get(5).loan().userId());
+        assertTrue(loanRepo.findOpenLoanByDevice("d-003").isPresent());
+
+        List<BatchResult> returned = loanService.returnBatch(Arrays.asList("d-002", "d-003", "d-003", "missing", null));
+        assertNotNull(returned.get(0).loan().returnedAt());
+        assertNotNull(returned.get(1).loan().returnedAt());
+        assertInstanceOf(NotFoundException.class, returned.get(2).error());
+        assertInstanceOf(NotFoundException.class, returned.get(3).error());
+        assertInstanceOf(ValidationException.class, returned.get(4).error());
+        assertTrue(loanRepo.findOpenLoanByDevice("d-002").isEmpty());
+        assertTrue(loanRepo.findOpenLoanByDevice("d-003").isEmpty());
+    }
+
     @Test
     public void returnMissing() {
         assertThrows(RuntimeException.class, () -> loanService.returnDevice("non-existent"));
@@ -0,0 +1,141 @@
+package dev.locker;
+
+import dev.locker.domain.Loan;
+import dev.locker.repo.DeviceRepository;
+import dev.locker.repo.UserRepository;
+import dev.locker.repo.file.FileBackedDeviceRepository;
+import dev.locker.repo.file.FileBackedUserRepository;
+import dev.locker.repo.mmap.LoanFileConverter;
+import dev.locker.repo.mmap.MappedLoanRepository;
+import dev.locker.service.LoanService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedLoanRepositoryTest {
+    @TempDir
+    Path dir;
+
+    private DeviceRepository deviceRepo;
+    private UserRepository userRepo;
+
+    @BeforeEach
+    public void setup() {
+        Path data = Path.of("data");
+        deviceRepo = new FileBackedDeviceRepository(data.resolve("devices.json"));
+        userRepo = new FileBackedUserRepository(data.resolve("users.json"));
+    }
+
+    @Test
+    public void storedLoansEqualTheLoansWritten() throws Exception {
+        Path file = dir.resolve("loans.bin");
+        Loan borrowed;
+        Loan returned;
+        Loan precise = new Loan("d-003", "u-101", Instant.parse("2025-10-01T09:00:00.123456789Z"),
+                Instant.parse("2025-10-08T09:00:00.000000001Z"), null);
+        try (MappedLoanRepository repo = new MappedLoanRepository(file)) {
+            LoanService service = new LoanService(deviceRepo, userRepo, repo);
+            borrowed = service.borrow("d-002", "u-103", 3);
+            assertEquals(fields(borrowed), fields(repo.findOpenLoanByDevice("d-002").orElseThrow()));
+            returned = service.returnDevice("d-002");
+            assertEquals(fields(returned), fields(repo.findByDeviceAndBorrowedAt("d-002", borrowed.borrowedAt()).orElseThrow()));
+            repo.save(precise);
+            assertEquals(fields(precise), fields(repo.findOpenLoanByDevice("d-003").orElseThrow()));
+        }
+        try (MappedLoanRepository reopened = new MappedLoanRepository(file)) {
+            assertEquals(fields(returned), fields(reopened.findByDeviceAndBorrowedAt("d-002", borrowed.borrowedAt()).orElseThrow()));
+            assertEquals(fields(precise), fields(reopened.findOpenLoanByDevice("d-003").orElseThrow()));
+        }
+    }
+
+    @Test
+    public void openLoansSurviveCleanAndUncleanShutdown() throws Exception {
+        Path file = dir.resolve("loans.bin");
+        Path crashed = Files.createDirectory(dir.resolve("crashed")).resolve("loans.bin");
+        List<Loan> open;
+        try (MappedLoanRepository repo = new MappedLoanRepository(file)) {
+            LoanService service = new LoanService(deviceRepo, userRepo, repo);
+            service.borrow("d-002", "u-103", 3);
+            service.borrow("d-003", "u-101", 3);
+            service.returnDevice("d-002");
+            open = repo.findOpenLoans();
+            assertEquals(List.of("d-003"), open.stream().map(Loan::deviceId).toList());
+            // the files as a crash would leave them: no saved open-loan index
+            Files.copy(file, crashed);
+            Files.copy(dir.resolve("loans.bin.ids"), crashed.resolveSibling("loans.bin.ids"));
+        }
+        assertTrue(Files.exists(dir.resolve("loans.bin.open")));
+        try (MappedLoanRepository reopened = new MappedLoanRepository(file);
+             MappedLoanRepository recovered = new MappedLoanRepository(crashed)) {
+            assertFalse(Files.exists(dir.resolve("loans.bin.open")));
+            assertEquals(fields(open.get(0)), fields(reopened.findOpenLoans().get(0)));
+            assertEquals(fields(open.get(0)), fields(recovered.findOpenLoans().get(0)));
+            assertEquals(1, reopened.findOpenLoans().size());
+            assertEquals(1, recovered.findOpenLoans().size());
+        }
+    }
+
+    @Test
+    public void readersNeverSeeHalfAnUpdate() throws Exception {
+        Instant borrowed = Instant.parse("2025-10-01T09:00:00Z");
+        Loan open = new Loan("d-001", "u-101", borrowed, borrowed.plusSeconds(86400), null);
+        Loan returned = new Loan("d-001", "u-102", borrowed, borrowed.plusSeconds(2 * 86400), borrowed.plusSeconds(3600));
+        try (MappedLoanRepository repo = new MappedLoanRepository(dir.resolve("loans.bin"))) {
+            repo.save(open);
+            AtomicBoolean done = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    repo.update(i % 2 == 0 ? returned : open);
+                }
+                done.set(true);
+            });
+            writer.start();
+            while (!done.get()) {
+                List<Loan> snapshot = repo.findAll();
+                List<Object> loan = fields(snapshot.get(0));
+                assertTrue(loan.equals(fields(open)) || loan.equals(fields(returned)), loan::toString);
+                // later updates do not show through a snapshot
+                assertEquals(loan, fields(snapshot.get(0)));
+            }
+            writer.join();
+        }
+    }
+
+    @Test
+    public void failedConversionLeavesNoLoanFile() throws Exception {
+        Path json = dir.resolve("loans.json");
+        Path bin = dir.resolve("loans.bin");
+        String loan = "{\"deviceId\":\"d-001\",\"userId\":\"u-101\",\"borrowedAt\":\"2025-10-01T09:00:00Z\","
+                + "\"dueAt\":\"2025-10-02T09:00:00Z\",\"returnedAt\":null}";
+        Files.writeString(json, "[" + loan + "," + loan.substring(0, 20));
+        assertThrows(IOException.class, () -> LoanFileConverter.convert(json, bin));
+        assertFalse(Files.exists(bin));
+
+        Files.writeString(json, "[" + loan + "]");
+        assertEquals(1, LoanFileConverter.convert(json, bin));
+        try (MappedLoanRepository repo = new MappedLoanRepository(bin)) {
+            assertEquals(1, repo.findOpenLoans().size());
+        }
+        assertFalse(Files.exists(dir.resolve("loans.bin.tmp")));
+    }
+
+    /**
+     * All fields of a loan; {@link Loan#equals} only compares the identity.
+     */
+    private static List<Object> fields(Loan loan) {
+        return Arrays.asList(loan.deviceId(), loan.userId(), loan.borrowedAt(), loan.dueAt(), loan.returnedAt());
+    }
+}
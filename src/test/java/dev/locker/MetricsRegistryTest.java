@@ -0,0 +1,49 @@
+package dev.locker;
+
+import dev.locker.metrics.MetricsRegistry;
+import dev.locker.metrics.RouteMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MetricsRegistryTest {
+    private MetricsRegistry metrics;
+
+    @BeforeEach
+    public void setup() {
+        metrics = new MetricsRegistry();
+    }
+
+    @Test
+    public void scrapeRendersRoutesAndGauges() {
+        RouteMetrics devices = metrics.route("GET", "/devices");
+        assertSame(devices, metrics.route("GET", "/devices"));
+        devices.record(200, TimeUnit.MICROSECONDS.toNanos(80));
+        devices.record(200, TimeUnit.MILLISECONDS.toNanos(3));
+        devices.record(404, TimeUnit.SECONDS.toNanos(20));
+        devices.record(-1, 0);
+        metrics.gauge("locker_devices", "Devices in the catalog.", () -> 42);
+        metrics.gauge("locker_snapshot_last_duration_seconds", "Time taken by the last snapshot.", "store", "loans", () -> 0.25);
+        metrics.gauge("locker_snapshot_last_duration_seconds", "Time taken by the last snapshot.", "store", "devices", () -> 0.5);
+
+        List<String> lines = metrics.scrape().lines().toList();
+        assertTrue(lines.contains("http_requests_total{method=\"GET\",route=\"/devices\",status=\"200\"} 2"));
+        assertTrue(lines.contains("http_requests_total{method=\"GET\",route=\"/devices\",status=\"404\"} 1"));
+        assertTrue(lines.contains("http_requests_total{method=\"GET\",route=\"/devices\",status=\"0\"} 1"));
+        assertTrue(lines.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/devices\",le=\"0.0001\"} 2"));
+        assertTrue(lines.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/devices\",le=\"0.005\"} 3"));
+        assertTrue(lines.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/devices\",le=\"10\"} 3"));
+        assertTrue(lines.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/devices\",le=\"+Inf\"} 4"));
+        assertTrue(lines.contains("http_request_duration_seconds_count{method=\"GET\",route=\"/devices\"} 4"));
+        assertTrue(lines.contains("http_request_duration_seconds_sum{method=\"GET\",route=\"/devices\"} 20.00308"));
+        assertTrue(lines.contains("locker_devices 42"));
+        assertTrue(lines.contains("locker_snapshot_last_duration_seconds{store=\"devices\"} 0.5"));
+        assertEquals(1, lines.stream().filter(l -> l.equals("# TYPE locker_snapshot_last_duration_seconds gauge")).count());
+    }
+}
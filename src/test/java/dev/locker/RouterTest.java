@@ -0,0 +1,99 @@
+package dev.locker;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.locker.domain.Loan;
+import dev.locker.http.HttpUtil;
+import dev.locker.http.Router;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RouterTest {
+    private HttpServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        Router router = new Router(server);
+        router.get("/devices", r -> HttpUtil.sendJson(r.exchange(), 200, "list " + r.query("q", "-")));
+        router.get("/devices/search", r -> HttpUtil.sendJson(r.exchange(), 200, "search " + r.query("q")));
+        router.get("/devices/{id}", r -> HttpUtil.sendJson(r.exchange(), 200, "device " + r.pathParam("id")));
+        router.get("/users/{id}/loans", r -> HttpUtil.sendJson(r.exchange(), 200, "loans " + r.pathParam("id")));
+        router.get("/users/{userId}/loans/{n}", r -> HttpUtil.sendJson(r.exchange(), 200,
+                List.of(r.pathParam("userId"), r.pathParam("n"))));
+        router.post("/devices/search", r -> HttpUtil.sendJson(r.exchange(), 201, "posted"));
+        router.post("/loans", r -> HttpUtil.sendJson(r.exchange(), 200, HttpUtil.readJson(r.exchange(), Loan.class)));
+        router.get("/broken", r -> HttpUtil.sendJson(r.exchange(), 200, new Object()));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void dispatchesByPathAndMethod() throws Exception {
+        assertEquals("200 \"list -\"", get("/devices"));
+        assertEquals("200 \"list a b+c\"", get("/devices?q=a+b%2Bc"));
+        assertEquals("200 \"search mac air\"", get("/devices/search?q=mac%20air"));
+        assertEquals("200 \"device searchX\"", get("/devices/searchX"));
+        assertEquals("200 \"device d 1\"", get("/devices/d%201"));
+        assertEquals("200 \"device a/b+c\"", get("/devices/a%2Fb+c"));
+        assertEquals("200 \"loans u/1\"", get("/users/u%2F1/loans"));
+        assertEquals("200 \"search x\"", get("/devices/%73earch?q=x"));
+        assertEquals("200 \"loans u-1\"", get("/users/u-1/loans"));
+        assertEquals("200 [\"u-1\",\"3\"]", get("/users/u-1/loans/3"));
+        assertEquals(404, status("/users/u-1"));
+        assertEquals(404, status("/devices/"));
+        assertEquals(404, status("/"));
+        assertEquals(404, status("/devicesX"));
+
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(uri("/devices/search"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, post.statusCode());
+        HttpResponse<String> put = client.send(HttpRequest.newBuilder(uri("/devices/d-1"))
+                .PUT(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, put.statusCode());
+        assertEquals("GET", put.headers().firstValue("Allow").orElse(""));
+    }
+
+    @Test
+    public void mapsRequestBodyErrorsTo400() throws Exception {
+        assertEquals(400, post("/loans", "{\"deviceId\":"));
+        assertEquals(400, post("/loans", "{\"deviceId\":\"d-1\"}"));
+        assertEquals(400, post("/loans", "{\"deviceId\":\"d-1\",\"userId\":\"u-1\",\"borrowedAt\":\"yesterday\"}"));
+        assertEquals(400, post("/loans", "[1]"));
+        // a response that cannot be written is the server's fault
+        assertEquals(500, status("/broken"));
+    }
+
+    private int post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private String get(String path) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() + " " + response.body();
+    }
+
+    private int status(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+}
@@ -1,19 +1,36 @@
 package dev.locker;
 
 import dev.locker.domain.Device;
+import dev.locker.domain.Loan;
 import dev.locker.repo.DeviceRepository;
 import dev.locker.repo.LoanRepository;
 import dev.locker.repo.file.FileBackedDeviceRepository;
 import dev.locker.repo.file.FileBackedLoanRepository;
+import dev.locker.repo.mmap.MappedLoanRepository;
+import dev.locker.service.LoanAnalytics;
+import dev.locker.service.OverdueIndex;
+import dev.locker.service.PopularityIndex;
 import dev.locker.service.StatsService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class StatsServiceTest {
     private StatsService statsService;
@@ -31,5 +48,157 @@ public class StatsServiceTest {
         List<Map.Entry<Device, Long>> top = statsService.popularSince(null, 5);
         assertNotNull(top);
     }
-}
 
+    @Test
+    public void popularityIndexMatchesFullScan(@TempDir Path dir) {
+        Random random = new Random(42);
+        DeviceRepository deviceRepo = new FileBackedDeviceRepository(dir.resolve("devices.json"));
+        for (int i = 0; i < 40; i++) {
+            deviceRepo.save(new Device("d-" + i, "Device " + i, Set.of(), Device.Condition.GOOD, 0));
+        }
+        Instant base = Instant.parse("2025-01-01T00:00:00Z");
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Instant at = base.plusNanos(random.nextLong(Duration.ofDays(90).toNanos()));
+            loans.add(new Loan("d-" + random.nextInt(40), "u-1", at, at.plus(Duration.ofDays(7)), null));
+        }
+        FileBackedLoanRepository loanRepo = new FileBackedLoanRepository(dir.resolve("loans.json"));
+        loanRepo.saveAll(loans.subList(0, 4000));
+        PopularityIndex index = new PopularityIndex(loanRepo.columns(), Duration.ofDays(100));
+        PopularityIndex recent = new PopularityIndex(loanRepo.columns(), Duration.ofDays(10));
+        for (Loan loan : loans.subList(4000, loans.size())) {
+            loanRepo.save(loan);
+            index.onBorrowed(loan);
+            recent.onBorrowed(loan);
+        }
+        List<Device> devices = deviceRepo.findAll();
+        Instant latest = loans.stream().map(Loan::borrowedAt).max(Comparator.naturalOrder()).orElseThrow();
+
+        for (int k = 0; k < 50; k++) {
+            Instant since = k == 0 ? loans.get(0).borrowedAt() : base.plusNanos(random.nextLong(Duration.ofDays(100).toNanos()));
+            int limit = 1 + random.nextInt(45);
+            assertEquals(fullScan(devices, loans, since, limit), index.top(devices, since, limit));
+            Instant recentSince = latest.minusNanos(random.nextLong(Duration.ofDays(10).toNanos()));
+            assertEquals(fullScan(devices, loans, recentSince, limit), recent.top(devices, recentSince, limit));
+            // starts before the retained days are scanned, not truncated
+            assertEquals(fullScan(devices, loans, since, limit), recent.top(devices, since, limit));
+        }
+        assertEquals(loans.size(), recent.version());
+        assertEquals(loans.size(), recent.countsSince(base).values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void overdueIndexTracksBorrowsAndReturns() {
+        Instant now = Instant.parse("2025-03-01T00:00:00Z");
+        Loan late = new Loan("d-1", "u-1", now.minus(Duration.ofDays(10)), now.minus(Duration.ofDays(3)), null);
+        Loan later = new Loan("d-2", "u-2", now.minus(Duration.ofDays(20)), now.minus(Duration.ofDays(13)), null);
+        Loan returned = new Loan("d-3", "u-1", now.minus(Duration.ofDays(30)), now.minus(Duration.ofDays(23)), now);
+        Loan notDue = new Loan("d-4", "u-1", now, now.plus(Duration.ofDays(7)), null);
+        OverdueIndex index = new OverdueIndex(List.of(late, later, returned, notDue));
+
+        assertEquals(3, index.openCount());
+        assertEquals(List.of(later, late), index.dueBefore(now, null, 10));
+        assertEquals(List.of(late), index.dueBefore(now, "u-1", 10));
+        assertEquals(List.of(later), index.dueBefore(now.minus(Duration.ofDays(5)), null, 10));
+        assertEquals(List.of(later), index.dueBefore(now, null, 1));
+
+        index.onReturned(new Loan("d-2", "u-2", later.borrowedAt(), later.dueAt(), now));
+        assertEquals(List.of(late), index.dueBefore(now, null, 10));
+        assertEquals(2, index.openCount());
+    }
+
+    @Test
+    public void loanAnalyticsMatchesFullScan(@TempDir Path dir) throws Exception {
+        Random random = new Random(7);
+        Instant base = Instant.parse("2025-01-01T00:00:00Z");
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 70_000; i++) {
+            Instant at = base.plusMillis(random.nextLong(Duration.ofDays(90).toMillis()));
+            Instant returnedAt = random.nextInt(8) == 0 ? null : at.plusMillis(random.nextLong(Duration.ofDays(12).toMillis()));
+            loans.add(new Loan("d-" + random.nextInt(300), "u-" + random.nextInt(50), at, at.plus(Duration.ofDays(7)), returnedAt));
+        }
+        try (MappedLoanRepository mapped = new MappedLoanRepository(dir.resolve("loans.bin"))) {
+            for (LoanRepository repo : List.of(new FileBackedLoanRepository(dir.resolve("loans.json")), mapped)) {
+                // seed with the first half, then replay the rest as borrows followed by returns
+                List<Loan> replay = loans.subList(35_000, loans.size());
+                repo.saveAll(loans.subList(0, 35_000));
+                repo.saveAll(replay.stream().map(l -> l.withReturnedAt(null)).toList());
+                repo.updateAll(replay.stream().filter(l -> l.returnedAt() != null).toList());
+                assertAnalyticsMatch(new LoanAnalytics(repo.columns()), loans, base);
+            }
+        }
+    }
+
+    @Test
+    public void loanDurationsDoNotOverflow(@TempDir Path dir) {
+        Instant base = Instant.parse("2025-01-01T00:00:00Z");
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Instant at = base.plusSeconds(i);
+            loans.add(new Loan("d-" + i % 100, "u-1", at, at.plus(Duration.ofDays(3650)), at.plus(Duration.ofDays(3650 + i % 7))));
+        }
+        FileBackedLoanRepository loanRepo = new FileBackedLoanRepository(dir.resolve("loans.json"));
+        loanRepo.saveAll(loans);
+        LoanAnalytics.LoanDurations durations = new LoanAnalytics(loanRepo.columns()).durations(base, base.plus(Duration.ofDays(1)));
+        double averageHours = loans.stream()
+                .mapToLong(l -> Duration.between(l.borrowedAt(), l.returnedAt()).toHours())
+                .average().orElseThrow();
+        assertEquals(loans.size(), durations.loans());
+        assertEquals(averageHours, durations.averageHours(), 1e-6);
+    }
+
+    private static void assertAnalyticsMatch(LoanAnalytics analytics, List<Loan> loans, Instant base) {
+        assertEquals(loans.size(), analytics.size());
+
+        Instant from = base.plus(Duration.ofDays(20));
+        Instant to = base.plus(Duration.ofDays(50));
+        List<Loan> window = loans.stream()
+                .filter(l -> !l.borrowedAt().isBefore(from) && l.borrowedAt().isBefore(to))
+                .toList();
+        List<Loan> returned = window.stream().filter(l -> l.returnedAt() != null).toList();
+
+        double averageHours = returned.stream()
+                .mapToLong(l -> Duration.between(l.borrowedAt(), l.returnedAt()).toMillis())
+                .average().orElse(0) / Duration.ofHours(1).toMillis();
+        LoanAnalytics.LoanDurations durations = analytics.durations(from, to);
+        assertEquals(returned.size(), durations.loans());
+        assertEquals(averageHours, durations.averageHours(), 1e-9);
+
+        long[] hourly = new long[24];
+        window.forEach(l -> hourly[l.borrowedAt().atZone(ZoneOffset.UTC).getHour()]++);
+        assertArrayEquals(hourly, analytics.hourly(from, to).borrows());
+
+        Map<String, List<Loan>> byUser = returned.stream().collect(Collectors.groupingBy(Loan::userId));
+        List<LoanAnalytics.OnTimeRate> rates = analytics.onTimeRates(from, to, null, 100);
+        assertEquals(byUser.size(), rates.size());
+        for (LoanAnalytics.OnTimeRate rate : rates) {
+            List<Loan> userLoans = byUser.get(rate.userId());
+            assertEquals(userLoans.size(), rate.returned());
+            assertEquals(userLoans.stream().filter(l -> !l.returnedAt().isAfter(l.dueAt())).count(), rate.onTime());
+        }
+        assertEquals(List.of(rates.get(3)), analytics.onTimeRates(from, to, rates.get(3).userId(), 10));
+
+        Map<String, Long> busy = loans.stream().collect(Collectors.groupingBy(Loan::deviceId, Collectors.summingLong(l -> {
+            Instant end = l.returnedAt() == null || l.returnedAt().isAfter(to) ? to : l.returnedAt();
+            Instant start = l.borrowedAt().isBefore(from) ? from : l.borrowedAt();
+            return Math.max(0, Duration.between(start, end).toMillis());
+        })));
+        List<LoanAnalytics.DeviceUtilization> top = analytics.utilization(from, to, 10);
+        assertEquals(10, top.size());
+        for (LoanAnalytics.DeviceUtilization u : top) {
+            assertEquals(Math.min(1.0, (double) busy.get(u.deviceId()) / Duration.between(from, to).toMillis()), u.utilization(), 1e-9);
+        }
+    }
+
+    private static List<Map.Entry<Device, Long>> fullScan(List<Device> devices, List<Loan> loans, Instant start, int limit) {
+        Map<String, Long> counts = loans.stream()
+                .filter(l -> !l.borrowedAt().isBefore(start))
+                .collect(Collectors.groupingBy(Loan::deviceId, Collectors.counting()));
+        return devices.stream()
+                .filter(d -> counts.containsKey(d.id()))
+                .map(d -> Map.entry(d, counts.get(d.id())))
+                .sorted(Comparator.comparingLong(e -> -e.getValue()))
+                .limit(Math.max(0, limit))
+                .collect(Collectors.toList());
+    }
+}